@@ -0,0 +1,78 @@
+package gitlet;
+
+import java.io.File;
+import java.util.concurrent.RecursiveAction;
+
+/** Hashes a range of working files and stores the contents of each as a
+ *  blob, splitting the range in halves across a ForkJoinPool until the
+ *  pieces are small.  A file whose hash equals the blob its path already
+ *  has in the head commit is not stored again.
+ *  @author sky
+ */
+class AddTask extends RecursiveAction {
+
+    /** Largest number of files handled without splitting. */
+    static final int THRESHOLD = 8;
+
+    /** A task that hashes and stores PATHS[LO .. HI), writing each hash to
+     *  HASHES.  BASES holds, for each path, the blob it has in the head
+     *  commit, or null.
+     *  @param paths the files to add
+     *  @param bases the head commit's blob for each file, or null
+     *  @param hashes receives the blob id of each file
+     *  @param store the object store
+     *  @param index the stat index used to avoid rehashing
+     *  @param lo the first index handled
+     *  @param hi one past the last index handled */
+    AddTask(String[] paths, String[] bases, String[] hashes,
+            ObjectStore store, StatIndex index, int lo, int hi) {
+        _paths = paths;
+        _bases = bases;
+        _hashes = hashes;
+        _store = store;
+        _index = index;
+        _lo = lo;
+        _hi = hi;
+    }
+
+    @Override
+    protected void compute() {
+        if (_hi - _lo <= THRESHOLD) {
+            for (int i = _lo; i < _hi; i += 1) {
+                File file = new File(_paths[i]);
+                String hash = _index.hash(_paths[i], file);
+                if (!hash.equals(_bases[i])) {
+                    _store.putFile(hash, file, _bases[i]);
+                }
+                _hashes[i] = hash;
+            }
+        } else {
+            int mid = (_lo + _hi) >>> 1;
+            invokeAll(new AddTask(_paths, _bases, _hashes, _store, _index,
+                                  _lo, mid),
+                      new AddTask(_paths, _bases, _hashes, _store, _index,
+                                  mid, _hi));
+        }
+    }
+
+    /** The files being added. */
+    private final String[] _paths;
+
+    /** The head commit's blob for each file, or null. */
+    private final String[] _bases;
+
+    /** The blob id computed for each file. */
+    private final String[] _hashes;
+
+    /** Where blobs are stored. */
+    private final ObjectStore _store;
+
+    /** Cache of working-file hashes. */
+    private final StatIndex _index;
+
+    /** First index handled by this task. */
+    private final int _lo;
+
+    /** One past the last index handled by this task. */
+    private final int _hi;
+}
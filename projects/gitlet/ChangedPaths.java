@@ -0,0 +1,187 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.TreeSet;
+
+/** A Bloom filter, for each commit, of the paths it changed relative to
+ *  its first parent, so that the history of one path can skip commits
+ *  that certainly did not touch it without reading them.  Each changed
+ *  path is added together with every directory above it.  A filter has
+ *  BITS_PER_PATH bits per path (at least MIN_BYTES bytes) and sets
+ *  HASHES bits per path, chosen by double hashing two FNV-1a hashes of
+ *  the path.  A commit that changed more than MAX_PATHS paths gets an
+ *  empty filter, meaning that any path may have changed.  The filters
+ *  are appended to a file as records
+ *      ID (ID BYTES)  LENGTH (int)  FILTER (LENGTH bytes)
+ *  @author sky
+ */
+class ChangedPaths {
+
+    /** Bits of filter per path added. */
+    static final int BITS_PER_PATH = 10;
+
+    /** Number of bits set for each path. */
+    static final int HASHES = 7;
+
+    /** Smallest filter, in bytes. */
+    static final int MIN_BYTES = 8;
+
+    /** Most paths a commit may change and still have a filter. */
+    static final int MAX_PATHS = 512;
+
+    /** Offset basis of the FNV-1a hash. */
+    private static final int FNV_BASIS = 0x811c9dc5;
+
+    /** Prime of the FNV-1a hash. */
+    private static final int FNV_PRIME = 0x01000193;
+
+    /** Basis of the second hash, which differs from the first. */
+    private static final int SECOND_BASIS = 0x5bd1e995;
+
+    /** Filters stored in FILE, which need not exist yet, of commits whose
+     *  ids are computed by HASH.  A record left partly written by a crash
+     *  is cut off, so that later records are appended in step.
+     *  @param file the changed-path file
+     *  @param hash the algorithm of the repository's ids */
+    ChangedPaths(File file, Hash hash) {
+        _file = file;
+        _filters = new HashMap<String, byte[]>();
+        if (!file.exists()) {
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(Utils.readContents(file));
+        int whole = 0;
+        while (buf.remaining() >= hash.bytes() + Integer.BYTES) {
+            String id = Encoder.getId(buf, hash);
+            int len = buf.getInt();
+            if (len < 0 || len > buf.remaining()) {
+                break;
+            }
+            byte[] bits = new byte[len];
+            buf.get(bits);
+            _filters.put(id, bits);
+            whole = buf.position();
+        }
+        if (whole < buf.limit()) {
+            truncate(whole);
+        }
+    }
+
+    /** Cut the changed-path file to its first LENGTH bytes.
+     *  @param length the length of the whole records */
+    private void truncate(long length) {
+        try (FileChannel ch = FileChannel.open(_file.toPath(),
+                                               StandardOpenOption.WRITE)) {
+            ch.truncate(length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** @return whether there is a filter for the commit UID.
+     *  @param uid a full commit id */
+    boolean contains(String uid) {
+        return _filters.containsKey(uid);
+    }
+
+    /** @return false if the commit UID certainly did not change PATH,
+     *  and true if it may have.
+     *  @param uid a full commit id with a filter
+     *  @param path a file or directory path */
+    boolean mayHaveChanged(String uid, String path) {
+        byte[] bits = _filters.get(uid);
+        if (bits.length == 0) {
+            return true;
+        }
+        int h1 = hash(path, FNV_BASIS), h2 = hash(path, SECOND_BASIS) | 1;
+        for (int i = 0; i < HASHES; i += 1) {
+            int bit = bit(h1, h2, i, bits.length);
+            if ((bits[bit / Byte.SIZE] & (1 << (bit % Byte.SIZE))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Record that the commit UID changed the files PATHS.
+     *  @param uid a full commit id
+     *  @param paths the paths of the files it changed */
+    void add(String uid, Collection<String> paths) {
+        if (contains(uid)) {
+            return;
+        }
+        TreeSet<String> all = new TreeSet<String>();
+        for (String path : paths) {
+            for (int i = path.indexOf(Tree.SEP); i >= 0;
+                 i = path.indexOf(Tree.SEP, i + 1)) {
+                all.add(path.substring(0, i));
+            }
+            all.add(path);
+        }
+        byte[] bits;
+        if (all.size() > MAX_PATHS) {
+            bits = new byte[0];
+        } else {
+            int len = Math.max(MIN_BYTES,
+                               (all.size() * BITS_PER_PATH + Byte.SIZE - 1)
+                               / Byte.SIZE);
+            bits = new byte[len];
+            for (String path : all) {
+                int h1 = hash(path, FNV_BASIS);
+                int h2 = hash(path, SECOND_BASIS) | 1;
+                for (int i = 0; i < HASHES; i += 1) {
+                    int bit = bit(h1, h2, i, len);
+                    bits[bit / Byte.SIZE] |= 1 << (bit % Byte.SIZE);
+                }
+            }
+        }
+        byte[] raw = Utils.fromHex(uid);
+        ByteBuffer rec = ByteBuffer.allocate(raw.length + Integer.BYTES
+                                             + bits.length);
+        rec.put(raw).putInt(bits.length).put(bits);
+        try {
+            Files.write(_file.toPath(), rec.array(),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _filters.put(uid, bits);
+    }
+
+    /** @return the Ith bit chosen for a path whose hashes are H1 and H2
+     *  in a filter of LEN bytes.
+     *  @param h1 the first hash of the path
+     *  @param h2 the second hash of the path, which is odd
+     *  @param i which of the HASHES bits to choose
+     *  @param len the size of the filter in bytes */
+    private static int bit(int h1, int h2, int i, int len) {
+        return (int) (Integer.toUnsignedLong(h1 + i * h2)
+                      % ((long) len * Byte.SIZE));
+    }
+
+    /** @return the FNV-1a hash of the UTF-8 bytes of PATH, starting from
+     *  BASIS.
+     *  @param path a path
+     *  @param basis the initial hash value */
+    private static int hash(String path, int basis) {
+        int h = basis;
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xff)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    /** The changed-path file. */
+    private final File _file;
+
+    /** The filter of each commit, by id. */
+    private final HashMap<String, byte[]> _filters;
+}
@@ -0,0 +1,145 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/** A batch of changes to the working tree, planned in full before any is
+ *  made.  Deletions are made first.  Writes then run on a bounded pool of
+ *  worker threads as a two-stage pipeline: each file is first compared
+ *  with the blob to be written, through the stat index, and skipped if
+ *  they already match; otherwise the blob is fetched from the store, and
+ *  written out in a second stage, so that later blobs are read while
+ *  earlier files are still being written.  At most PREFETCH files are in
+ *  flight at once, which bounds the memory held by fetched blobs.
+ *  @author sky
+ */
+class Checkout {
+
+    /** Largest number of files fetched but not yet written. */
+    static final int PREFETCH = 64;
+
+    /** An empty plan whose blobs come from STORE and whose written files
+     *  are recorded in INDEX.
+     *  @param store the object store
+     *  @param index the stat index of the working tree */
+    Checkout(ObjectStore store, StatIndex index) {
+        _store = store;
+        _index = index;
+        _writes = new ArrayList<String[]>();
+        _deletes = new ArrayList<String>();
+    }
+
+    /** Plan to make the working file PATH hold the blob ID.
+     *  @param path the name of the file
+     *  @param id the blob it should contain */
+    void write(String path, String id) {
+        _writes.add(new String[] {path, id});
+    }
+
+    /** Plan to delete the working file PATH.
+     *  @param path the name of the file */
+    void delete(String path) {
+        _deletes.add(path);
+    }
+
+    /** @return the number of files actually written by run. */
+    int written() {
+        return _written;
+    }
+
+    /** Carry out the plan. */
+    void run() {
+        for (String path : _deletes) {
+            WorkTree.delete(path);
+            _index.forget(path);
+        }
+        if (_writes.isEmpty()) {
+            return;
+        }
+        int threads = Math.min(_writes.size(),
+                               Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Semaphore inFlight = new Semaphore(PREFETCH);
+        List<CompletableFuture<Void>> pending =
+            new ArrayList<CompletableFuture<Void>>();
+        try {
+            for (String[] w : _writes) {
+                inFlight.acquireUninterruptibly();
+                pending.add(CompletableFuture
+                    .supplyAsync(() -> fetch(w[0], w[1]), pool)
+                    .thenAcceptAsync(data -> store(w[0], w[1], data), pool)
+                    .whenComplete((r, e) -> inFlight.release()));
+            }
+            CompletableFuture.allOf(pending.toArray(
+                new CompletableFuture<?>[0])).join();
+        } catch (CompletionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw excp;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** @return the contents of blob ID if it must be written to PATH and
+     *  is small enough to hold in memory, STREAM if it must be written but
+     *  is too large, or null if PATH already holds it.
+     *  @param path the name of the file
+     *  @param id the blob it should contain */
+    private byte[] fetch(String path, String id) {
+        File file = new File(path);
+        if (file.isFile() && _index.hash(path, file).equals(id)) {
+            return null;
+        }
+        if (_store.streamed(id)) {
+            return STREAM;
+        }
+        return _store.get(id);
+    }
+
+    /** Write DATA, as returned by fetch, to PATH as the blob ID.
+     *  @param path the name of the file
+     *  @param id the blob it should contain
+     *  @param data the fetched contents, STREAM, or null */
+    private void store(String path, String id, byte[] data) {
+        if (data == null) {
+            return;
+        }
+        File file = new File(path);
+        WorkTree.makeParents(file);
+        if (data == STREAM) {
+            _store.copyTo(id, file);
+        } else {
+            Utils.writeContents(file, data);
+        }
+        _index.record(path, file, id);
+        synchronized (this) {
+            _written += 1;
+        }
+    }
+
+    /** Marker returned by fetch for blobs to be streamed. */
+    private static final byte[] STREAM = new byte[0];
+
+    /** Where blobs come from. */
+    private final ObjectStore _store;
+
+    /** Stat index of the working tree. */
+    private final StatIndex _index;
+
+    /** Planned writes, as {path, blob id} pairs. */
+    private final ArrayList<String[]> _writes;
+
+    /** Planned deletions. */
+    private final ArrayList<String> _deletes;
+
+    /** Number of files written. */
+    private int _written;
+}
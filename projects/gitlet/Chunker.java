@@ -0,0 +1,131 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Random;
+
+/** Splits files into chunks at boundaries chosen by their content, in
+ *  the manner of FastCDC, so that an edit to one region of a large file
+ *  changes only the chunks around it and every other chunk is stored
+ *  once however many versions share it.  A gear hash is rolled over the
+ *  bytes, one shift and one table lookup per byte, and a chunk ends where
+ *  the top bits of the hash are all zero.  No chunk is cut before
+ *  MIN_CHUNK bytes or allowed to exceed MAX_CHUNK bytes, and the mask is
+ *  stricter before AVG_CHUNK bytes than after, which draws chunk sizes
+ *  towards AVG_CHUNK.
+ *  @author sky
+ */
+class Chunker {
+
+    /** Receives the chunks of a file. */
+    interface Sink {
+        /** Accept the LEN bytes of BUF starting at OFF as the next chunk.
+         *  @param buf holds the chunk
+         *  @param off the start of the chunk in BUF
+         *  @param len the length of the chunk */
+        void chunk(byte[] buf, int off, int len);
+    }
+
+    /** Smallest chunk, other than the last. */
+    static final int MIN_CHUNK = 1 << 14;
+
+    /** Size that chunks are drawn towards. */
+    static final int AVG_CHUNK = 1 << 16;
+
+    /** Largest chunk. */
+    static final int MAX_CHUNK = 1 << 18;
+
+    /** Mask tested before AVG_CHUNK bytes: two bits more than the log of
+     *  AVG_CHUNK, so that cuts there are rarer. */
+    private static final long MASK_SMALL = -1L << (Long.SIZE - 18);
+
+    /** Mask tested after AVG_CHUNK bytes: two bits fewer than the log of
+     *  AVG_CHUNK, so that cuts there are likelier. */
+    private static final long MASK_LARGE = -1L << (Long.SIZE - 14);
+
+    /** Seed of the gear table, which must never change, as it decides
+     *  where every stored file was cut. */
+    private static final long SEED = 0x6769746c6574L;
+
+    /** Number of distinct byte values. */
+    private static final int BYTE_VALUES = 256;
+
+    /** Mask converting a byte to an unsigned value. */
+    private static final int UNSIGNED = 0xff;
+
+    /** Random value added to the hash for each byte value. */
+    private static final long[] GEAR = new long[BYTE_VALUES];
+
+    static {
+        Random random = new Random(SEED);
+        for (int i = 0; i < BYTE_VALUES; i += 1) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /** Split the contents of FILE into chunks, passing each to SINK in
+     *  order.  The file is read through a buffer of two MAX_CHUNK.
+     *  @param file a plain file
+     *  @param sink receives the chunks */
+    static void split(File file, Sink sink) {
+        byte[] buf = new byte[2 * MAX_CHUNK];
+        int start = 0, end = 0;
+        boolean eof = false;
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            while (true) {
+                if (!eof && end - start < MAX_CHUNK) {
+                    System.arraycopy(buf, start, buf, 0, end - start);
+                    end -= start;
+                    start = 0;
+                    while (end < buf.length) {
+                        int n = in.read(buf, end, buf.length - end);
+                        if (n < 0) {
+                            eof = true;
+                            break;
+                        }
+                        end += n;
+                    }
+                }
+                if (start == end) {
+                    return;
+                }
+                int len = cut(buf, start, end - start);
+                sink.chunk(buf, start, len);
+                start += len;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** @return the length of the chunk that begins at OFF in BUF, where
+     *  LEN bytes are available and, unless the file ends sooner, at least
+     *  MAX_CHUNK of them.
+     *  @param buf holds the data
+     *  @param off the start of the chunk
+     *  @param len the number of bytes available from OFF */
+    static int cut(byte[] buf, int off, int len) {
+        if (len <= MIN_CHUNK) {
+            return len;
+        }
+        int limit = Math.min(len, MAX_CHUNK);
+        int normal = Math.min(limit, AVG_CHUNK);
+        long h = 0;
+        int i = MIN_CHUNK;
+        for (; i < normal; i += 1) {
+            h = (h << 1) + GEAR[buf[off + i] & UNSIGNED];
+            if ((h & MASK_SMALL) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < limit; i += 1) {
+            h = (h << 1) + GEAR[buf[off + i] & UNSIGNED];
+            if ((h & MASK_LARGE) == 0) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+}
@@ -0,0 +1,170 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** A compression scheme for stored objects.  Every codec has a small
+ *  number identifying it, which is recorded with each object it
+ *  compressed, so that objects written with different codecs can share a
+ *  store and a codec can be added without rewriting old objects.  A new
+ *  codec needs only a subclass and an entry in CODECS.
+ *  @author sky
+ */
+abstract class Codec {
+
+    /** Number of the codec that stores data as it is. */
+    static final int NONE = 0;
+
+    /** Number of the deflate codec. */
+    static final int DEFLATE = 1;
+
+    /** Size of the buffers used to copy streams. */
+    static final int BUFFER = 1 << 16;
+
+    /** @return the codec numbered ID.
+     *  @param id the number of a codec */
+    static Codec get(int id) {
+        if (id < 0 || id >= CODECS.length || CODECS[id] == null) {
+            throw new IllegalArgumentException("unknown codec " + id);
+        }
+        return CODECS[id];
+    }
+
+    /** @return the codec called NAME.
+     *  @param name the name of a codec */
+    static Codec named(String name) {
+        for (Codec codec : CODECS) {
+            if (codec != null && codec.name().equals(name)) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("unknown codec " + name);
+    }
+
+    /** @return the number identifying this codec. */
+    abstract int id();
+
+    /** @return the name of this codec. */
+    abstract String name();
+
+    /** @return a stream that compresses what is written to it onto OUT.
+     *  Closing it closes OUT.
+     *  @param out receives the compressed bytes */
+    abstract OutputStream compress(OutputStream out);
+
+    /** @return a stream of the decompressed contents of IN.  Closing it
+     *  closes IN.
+     *  @param in the compressed bytes */
+    abstract InputStream decompress(InputStream in);
+
+    /** @return DATA compressed.
+     *  @param data the bytes to compress */
+    byte[] encode(byte[] data) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (OutputStream out = compress(result)) {
+            out.write(data);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result.toByteArray();
+    }
+
+    /** @return the LENGTH bytes that IN decompresses to.
+     *  @param in the compressed bytes
+     *  @param length the size of the decompressed data */
+    byte[] decode(InputStream in, int length) {
+        byte[] result = new byte[length];
+        try (InputStream data = decompress(in)) {
+            for (int done = 0; done < length;) {
+                int n = data.read(result, done, length - done);
+                if (n < 0) {
+                    throw new IllegalArgumentException("truncated object");
+                }
+                done += n;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result;
+    }
+
+    /** Stores data unchanged. */
+    private static class None extends Codec {
+        @Override
+        int id() {
+            return NONE;
+        }
+
+        @Override
+        String name() {
+            return "none";
+        }
+
+        @Override
+        OutputStream compress(OutputStream out) {
+            return out;
+        }
+
+        @Override
+        InputStream decompress(InputStream in) {
+            return in;
+        }
+    }
+
+    /** Compresses data with zlib's deflate. */
+    private static class Deflate extends Codec {
+        @Override
+        int id() {
+            return DEFLATE;
+        }
+
+        @Override
+        String name() {
+            return "deflate";
+        }
+
+        @Override
+        OutputStream compress(OutputStream out) {
+            Deflater deflater = new Deflater(LEVEL);
+            return new DeflaterOutputStream(out, deflater, BUFFER) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        deflater.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        InputStream decompress(InputStream in) {
+            Inflater inflater = new Inflater();
+            return new InflaterInputStream(in, inflater, BUFFER) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
+        }
+
+        /** Compression level, set by the system property
+         *  gitlet.deflateLevel. */
+        private static final int LEVEL =
+            Integer.getInteger("gitlet.deflateLevel", Deflater.BEST_SPEED);
+    }
+
+    /** Every codec, indexed by number. */
+    private static final Codec[] CODECS = { new None(), new Deflate() };
+}
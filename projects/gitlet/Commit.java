@@ -2,21 +2,36 @@ package gitlet;
 import java.util.Date;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 
 /**
+ * A snapshot of the tracked files together with its metadata.  Commits
+ * are stored in a versioned binary form:
+ *     VERSION (1 byte)  UID  HAS-TREE (1 byte)  [TREE]
+ *     PARENT-COUNT (1 byte)  PARENTS...  DATE  MESSAGE
+ * where ids are raw bytes and DATE and MESSAGE are length-prefixed.
  * @author sky
  * */
 
-public class Commit implements Serializable {
+public class Commit {
+
+    /** version of the binary format written by encode. */
+    static final int FORMAT = 1;
 
     /**  */
     private String _msg;
 
+    /**  */
+    private String _tree;
+
     /**  */
     private HashMap<String, String> _files;
 
+    /**  */
+    private ObjectStore _store;
+
     /**  */
     private String[] _parents;
 
@@ -33,14 +48,16 @@ public class Commit implements Serializable {
     /**
      * Creates a commit object initialized by the following.
      * @param msg a message describing the commit
-     * @param files the file that is being committed
+     * @param tree the id of the Tree of files being committed
      * @param parents the prior commits
      * @param check a boolean checking whether the commit exists already
+     * @param hash the algorithm of the repository's ids
      */
-    public Commit(String msg, HashMap files, String[] parents, boolean check) {
+    public Commit(String msg, String tree, String[] parents, boolean check,
+                  Hash hash) {
 
         _msg = msg;
-        _files = files;
+        _tree = tree;
         _parents = parents;
         Date date;
 
@@ -51,19 +68,97 @@ public class Commit implements Serializable {
             _date = "Wed Dec 31 16:00:00 1969 -0800";
         }
 
-        String filesStr;
-        if (_files != null) {
-            filesStr = _files.toString();
+        uID = rehash(hash);
+    }
+
+    /**
+     * @return the id this commit's contents hash to under HASH, which
+     * equals uID unless the commit has been corrupted.
+     * @param hash the algorithm of the repository's ids
+     */
+    String rehash(Hash hash) {
+        String treeStr;
+        if (_tree != null) {
+            treeStr = _tree;
+        } else {
+            treeStr = "";
+        }
+        return Utils.hash(hash, _date, Arrays.toString(_parents), _msg,
+                          treeStr);
+    }
+
+    /**
+     * a commit read back from its encoding.
+     * @param uid the universal ID
+     * @param msg the message
+     * @param tree the id of the tree, or null
+     * @param parents the parent ids, or null
+     * @param date the formatted date
+     */
+    private Commit(String uid, String msg, String tree, String[] parents,
+                   String date) {
+        uID = uid;
+        _msg = msg;
+        _tree = tree;
+        _parents = parents;
+        _date = date;
+    }
+
+    /** @return the binary encoding of this commit */
+    byte[] encode() {
+        Encoder out = new Encoder();
+        out.putByte(FORMAT).putId(uID);
+        if (_tree == null) {
+            out.putByte(0);
+        } else {
+            out.putByte(1).putId(_tree);
+        }
+        if (_parents == null) {
+            out.putByte(0);
         } else {
-            filesStr = "";
+            out.putByte(_parents.length);
+            for (String parent : _parents) {
+                out.putId(parent);
+            }
+        }
+        return out.putString(_date).putString(_msg).toByteArray();
+    }
+
+    /**
+     * reads a commit from its binary encoding.
+     * @param buf the encoding, positioned at its start
+     * @param hash the algorithm of the repository's ids
+     * @return the decoded commit
+     */
+    static Commit decode(ByteBuffer buf, Hash hash) {
+        int version = buf.get();
+        if (version != FORMAT) {
+            throw new IllegalArgumentException("unknown commit format "
+                    + version);
+        }
+        String uid = Encoder.getId(buf, hash);
+        String tree = null;
+        if (buf.get() != 0) {
+            tree = Encoder.getId(buf, hash);
         }
-        uID = Utils.sha1(_date, Arrays.toString(_parents), _msg, filesStr);
+        String[] parents = null;
+        int count = buf.get();
+        if (count > 0) {
+            parents = new String[count];
+            for (int i = 0; i < count; i += 1) {
+                parents[i] = Encoder.getId(buf, hash);
+            }
+        }
+        String date = Encoder.getString(buf);
+        String msg = Encoder.getString(buf);
+        return new Commit(uid, msg, tree, parents, date);
     }
 
     /** @return creates the initial commit that
-     * contains nothing with msg "initial commit" */
-    public static Commit initialCommit() {
-        return new Commit("initial commit", null, null, false);
+     * contains nothing with msg "initial commit"
+     * @param hash the algorithm of the repository's ids */
+    public static Commit initialCommit(Hash hash) {
+        return new Commit("initial commit", null, null, false, hash);
     }
 
     /** @return the message of the commit */
@@ -71,11 +166,26 @@ public class Commit implements Serializable {
         return _msg;
     }
 
-    /** @return a hashmap of the blobs being tracked */
+    /** @return a hashmap of the blobs being tracked, read from the tree
+     * the first time it is needed */
     public HashMap<String, String> files() {
+        if (_files == null && _tree != null) {
+            _files = Tree.flatten(_store, _tree);
+        }
         return _files;
     }
 
+    /** @return the id of the root tree, or null for the initial commit */
+    public String tree() {
+        return _tree;
+    }
+
+    /** lets this commit read its tree from STORE.
+     * @param store the object store holding the tree */
+    void attach(ObjectStore store) {
+        _store = store;
+    }
+
     /** @return a list of the parent commits */
     public String[] parents() {
         return _parents;
@@ -86,6 +196,15 @@ public class Commit implements Serializable {
         return _date;
     }
 
+    /** @return the date of the commit in milliseconds since the epoch */
+    public long timestamp() {
+        try {
+            return SDF.parse(_date).getTime();
+        } catch (ParseException excp) {
+            return 0;
+        }
+    }
+
     /** @return returns the ID of the parent commit */
     public String pID() {
         if (_parents != null) {
@@ -0,0 +1,85 @@
+package gitlet;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A bounded map from commit ids to decoded commits that evicts the
+ *  least-recently-used entry once it holds more than its capacity.  The
+ *  capacity defaults to DEFAULT_SIZE and may be set with the system
+ *  property gitlet.commitCache.  Lookups made through lookup are counted
+ *  as hits or misses, which a daemon reports on request.  Cached commits
+ *  are shared, so callers must not modify them.
+ *  @author sky
+ */
+class CommitCache extends LinkedHashMap<String, Commit> {
+
+    /** Default number of commits retained. */
+    static final int DEFAULT_SIZE = 1024;
+
+    /** Initial table size of the underlying map. */
+    private static final int INITIAL = 64;
+
+    /** Load factor of the underlying map. */
+    private static final float LOAD = 0.75f;
+
+    /** A cache holding at most gitlet.commitCache commits. */
+    CommitCache() {
+        this(Integer.getInteger("gitlet.commitCache", DEFAULT_SIZE));
+    }
+
+    /** A cache holding at most CAPACITY commits.
+     *  @param capacity the maximum number of entries */
+    CommitCache(int capacity) {
+        super(INITIAL, LOAD, true);
+        _capacity = capacity;
+    }
+
+    /** @return the cached commit with id UID, or null if it is not cached,
+     *  counting the lookup as a hit or miss.
+     *  @param uid a full commit id */
+    Commit lookup(String uid) {
+        Commit result = get(uid);
+        if (result == null) {
+            _misses += 1;
+        } else {
+            _hits += 1;
+        }
+        return result;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Commit> eldest) {
+        return size() > _capacity;
+    }
+
+    /** @return the number of lookups satisfied from the cache. */
+    long hits() {
+        return _hits;
+    }
+
+    /** @return the number of lookups that missed the cache. */
+    long misses() {
+        return _misses;
+    }
+
+    /** @return the maximum number of entries retained. */
+    int capacity() {
+        return _capacity;
+    }
+
+    /** @return a one-line summary of the cache's size and counters. */
+    String stats() {
+        return String.format("commit cache: %d of %d entries, %d hits, "
+                             + "%d misses", size(), capacity(), hits(),
+                             misses());
+    }
+
+    /** Maximum number of entries. */
+    private final int _capacity;
+
+    /** Number of lookups that found their commit. */
+    private long _hits;
+
+    /** Number of lookups that did not find their commit. */
+    private long _misses;
+}
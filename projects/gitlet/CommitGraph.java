@@ -0,0 +1,297 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** A compact, append-only description of the shape of the commit
+ *  history, so that ancestry questions can be answered without reading
+ *  any commits.  Each commit occupies one fixed-size record
+ *      ID (ID BYTES)  PARENT1  PARENT2  GENERATION (ints)  TIME (long)
+ *  where parents are positions of earlier records (-1 if absent), the
+ *  generation of a root is 1 and of any other commit is one more than
+ *  the largest generation of its parents, and TIME is the commit
+ *  date in milliseconds.  Records appear in the order commits were
+ *  added, which is always an order in which parents precede children.
+ *  @author sky
+ */
+class CommitGraph {
+
+    /** Smallest allocated size of the per-commit arrays. */
+    private static final int MIN_CAPACITY = 16;
+
+    /** Parent position meaning "no parent". */
+    private static final int NONE = -1;
+
+    /** Flag on a commit reachable from the first commit. */
+    private static final int LEFT = 1;
+
+    /** Flag on a commit reachable from the second commit. */
+    private static final int RIGHT = 2;
+
+    /** Flag on a commit whose ancestors need no further painting. */
+    private static final int STALE = 4;
+
+    /** Flag on a commit already chosen as a common ancestor. */
+    private static final int RESULT = 8;
+
+    /** A graph stored in FILE, which need not exist yet, of commits whose
+     *  ids are computed by HASH.  A record left partly written by a crash
+     *  is cut off, so that later records are appended in step.
+     *  @param file the commit-graph file
+     *  @param hash the algorithm of the repository's ids */
+    CommitGraph(File file, Hash hash) {
+        _file = file;
+        _hash = hash;
+        _recordBytes = hash.bytes() + 3 * Integer.BYTES + Long.BYTES;
+        _ids = new ArrayList<ObjectId>();
+        _positions = new HashMap<ObjectId, Integer>();
+        _parent1 = new int[0];
+        _parent2 = new int[0];
+        _generation = new int[0];
+        _time = new long[0];
+        if (file.exists()) {
+            ByteBuffer buf = ByteBuffer.wrap(Utils.readContents(file));
+            while (buf.remaining() >= _recordBytes) {
+                append(ObjectId.read(buf, hash), buf.getInt(), buf.getInt(),
+                       buf.getInt(), buf.getLong());
+            }
+            if (buf.hasRemaining()) {
+                truncate(buf.position());
+            }
+        }
+    }
+
+    /** Cut the graph file to its first LENGTH bytes.
+     *  @param length the length of the whole records */
+    private void truncate(long length) {
+        try (FileChannel ch = FileChannel.open(_file.toPath(),
+                                               StandardOpenOption.WRITE)) {
+            ch.truncate(length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** @return whether the graph file exists. */
+    boolean exists() {
+        return _file.exists();
+    }
+
+    /** @return the number of commits in the graph. */
+    int size() {
+        return _ids.size();
+    }
+
+    /** @return whether the commit with id UID is in the graph.
+     *  @param uid a full commit id */
+    boolean contains(String uid) {
+        return _positions.containsKey(ObjectId.of(uid, _hash));
+    }
+
+    /** @return the generation number of the commit with id UID.
+     *  @param uid a full commit id in the graph */
+    int generation(String uid) {
+        return _generation[position(uid)];
+    }
+
+    /** @return the time of the commit with id UID.
+     *  @param uid a full commit id in the graph */
+    long time(String uid) {
+        return _time[position(uid)];
+    }
+
+    /** @return the ids of the parents of the commit with id UID.
+     *  @param uid a full commit id in the graph */
+    List<String> parents(String uid) {
+        int p = position(uid);
+        ArrayList<String> result = new ArrayList<String>();
+        if (_parent1[p] != NONE) {
+            result.add(_ids.get(_parent1[p]).toString());
+        }
+        if (_parent2[p] != NONE) {
+            result.add(_ids.get(_parent2[p]).toString());
+        }
+        return result;
+    }
+
+    /** Add COMMIT to the graph, if it is not already there.  Its parents
+     *  must already be present.
+     *  @param commit the commit to add */
+    void add(Commit commit) {
+        if (contains(commit.uID())) {
+            return;
+        }
+        String[] parents = commit.parents();
+        int p1 = NONE, p2 = NONE;
+        if (parents != null && parents.length > 0) {
+            p1 = position(parents[0]);
+        }
+        if (parents != null && parents.length > 1) {
+            p2 = position(parents[1]);
+        }
+        int gen = 1;
+        if (p1 != NONE) {
+            gen = Math.max(gen, _generation[p1] + 1);
+        }
+        if (p2 != NONE) {
+            gen = Math.max(gen, _generation[p2] + 1);
+        }
+        long time = commit.timestamp();
+
+        ObjectId id = ObjectId.of(commit.uID(), _hash);
+        ByteBuffer rec = ByteBuffer.allocate(_recordBytes);
+        id.write(rec);
+        rec.putInt(p1).putInt(p2).putInt(gen).putLong(time);
+        try {
+            Files.write(_file.toPath(), rec.array(),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        append(id, p1, p2, gen, time);
+    }
+
+    /** @return a best common ancestor of the commits with ids A and B, or
+     *  null if they have none.  Both sides are walked together, most
+     *  recent generation first, following every parent; the walk stops
+     *  as soon as every pending commit is known to lie below a common
+     *  ancestor already found.  Of the common ancestors found, the one
+     *  with the greatest generation (then the latest time) is returned.
+     *  @param a a full commit id in the graph
+     *  @param b a full commit id in the graph */
+    String mergeBase(String a, String b) {
+        int pa = position(a), pb = position(b);
+        if (pa == pb) {
+            return a;
+        }
+        int[] flags = new int[size()];
+        boolean[] queued = new boolean[size()];
+        PriorityQueue<Integer> queue = new PriorityQueue<Integer>(
+            (x, y) -> _generation[x] != _generation[y]
+                ? Integer.compare(_generation[y], _generation[x])
+                : Long.compare(_time[y], _time[x]));
+        flags[pa] |= LEFT;
+        flags[pb] |= RIGHT;
+        queue.add(pa);
+        queue.add(pb);
+        queued[pa] = queued[pb] = true;
+        int live = 2;
+        int best = NONE;
+        while (live > 0) {
+            int c = queue.poll();
+            queued[c] = false;
+            int f = flags[c] & (LEFT | RIGHT | STALE);
+            if ((flags[c] & STALE) == 0) {
+                live -= 1;
+            }
+            if ((f & (LEFT | RIGHT)) == (LEFT | RIGHT)) {
+                if ((flags[c] & RESULT) == 0) {
+                    flags[c] |= RESULT;
+                    if (best == NONE || better(c, best)) {
+                        best = c;
+                    }
+                }
+                f |= STALE;
+            }
+            for (int p : new int[] {_parent1[c], _parent2[c]}) {
+                if (p == NONE || (flags[p] & f) == f) {
+                    continue;
+                }
+                boolean wasLive = queued[p] && (flags[p] & STALE) == 0;
+                flags[p] |= f;
+                boolean isLive = (flags[p] & STALE) == 0;
+                if (isLive && !wasLive) {
+                    live += 1;
+                } else if (wasLive && !isLive) {
+                    live -= 1;
+                }
+                if (!queued[p]) {
+                    queued[p] = true;
+                    queue.add(p);
+                }
+            }
+        }
+        return best == NONE ? null : _ids.get(best).toString();
+    }
+
+    /** @return whether position X is a better merge base than Y.
+     *  @param x a graph position
+     *  @param y a graph position */
+    private boolean better(int x, int y) {
+        if (_generation[x] != _generation[y]) {
+            return _generation[x] > _generation[y];
+        }
+        return _time[x] > _time[y];
+    }
+
+    /** @return the position of the commit with id UID.
+     *  @param uid a full commit id that must be in the graph */
+    private int position(String uid) {
+        Integer p = _positions.get(ObjectId.of(uid, _hash));
+        if (p == null) {
+            throw new IllegalArgumentException("commit-graph is missing "
+                                               + uid);
+        }
+        return p;
+    }
+
+    /** Add a record for UID with parents P1 and P2, generation GEN, and
+     *  time TIME to the in-memory graph.
+     *  @param uid a commit id
+     *  @param p1 position of the first parent
+     *  @param p2 position of the second parent
+     *  @param gen generation number
+     *  @param time commit time */
+    private void append(ObjectId uid, int p1, int p2, int gen, long time) {
+        int n = _ids.size();
+        if (n == _parent1.length) {
+            int cap = Math.max(2 * n, MIN_CAPACITY);
+            _parent1 = Arrays.copyOf(_parent1, cap);
+            _parent2 = Arrays.copyOf(_parent2, cap);
+            _generation = Arrays.copyOf(_generation, cap);
+            _time = Arrays.copyOf(_time, cap);
+        }
+        _ids.add(uid);
+        _positions.put(uid, n);
+        _parent1[n] = p1;
+        _parent2[n] = p2;
+        _generation[n] = gen;
+        _time[n] = time;
+    }
+
+    /** The commit-graph file. */
+    private final File _file;
+
+    /** The algorithm of the repository's ids. */
+    private final Hash _hash;
+
+    /** Size of one record, which depends on the repository's Hash. */
+    private final int _recordBytes;
+
+    /** Commit ids by position. */
+    private final ArrayList<ObjectId> _ids;
+
+    /** Positions by commit id. */
+    private final HashMap<ObjectId, Integer> _positions;
+
+    /** Position of each commit's first parent. */
+    private int[] _parent1;
+
+    /** Position of each commit's second parent. */
+    private int[] _parent2;
+
+    /** Generation number of each commit. */
+    private int[] _generation;
+
+    /** Time of each commit. */
+    private long[] _time;
+}
@@ -0,0 +1,352 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+/** A persistent sorted index of all commit ids, used to expand
+ *  abbreviated ids.  The file holds a fanout table of 256 big-endian
+ *  ints, entry B being the number of ids whose first byte is at most B,
+ *  followed by the raw ids in ascending order.  Lookups map the file
+ *  and binary-search the bucket chosen by the fanout table, so they
+ *  cost O(log N) and read only a few pages.  Ids added one at a time are
+ *  appended, unsorted, to a tail file beside it, which is read into a
+ *  sorted set and searched too, so that a commit costs no more than the
+ *  append; once the tail holds MAX_TAIL ids it is merged into the sorted
+ *  file in a single pass.
+ *  @author sky
+ */
+class CommitIndex {
+
+    /** Number of entries in the fanout table. */
+    private static final int FANOUT = 256;
+
+    /** Size in bytes of the fanout table. */
+    private static final int FANOUT_BYTES = FANOUT * Integer.BYTES;
+
+    /** Mask converting a byte to an unsigned value. */
+    private static final int UNSIGNED = 0xff;
+
+    /** Most ids held in the tail before it is merged. */
+    static final int MAX_TAIL = 1024;
+
+    /** An index stored in FILE, which need not exist yet, of commits whose
+     *  ids are computed by HASH.
+     *  @param file the index file
+     *  @param hash the algorithm of the repository's ids */
+    CommitIndex(File file, Hash hash) {
+        _file = file;
+        _tailFile = new File(file.getPath() + ".tail");
+        _idBytes = hash.bytes();
+        _tail = new TreeSet<String>();
+        remap();
+        loadTail();
+    }
+
+    /** @return whether the sorted index file exists. */
+    boolean exists() {
+        return _file.exists();
+    }
+
+    /** @return the number of ids in the index. */
+    int size() {
+        return stored() + _tail.size();
+    }
+
+    /** @return the number of ids in the sorted file. */
+    private int stored() {
+        return _map == null ? 0 : (_map.capacity() - FANOUT_BYTES) / _idBytes;
+    }
+
+    /** Read the ids appended to the tail file that are not already in the
+     *  sorted file, cutting off any id left partly written by a crash. */
+    private void loadTail() {
+        if (!_tailFile.exists()) {
+            return;
+        }
+        byte[] data = Utils.readContents(_tailFile);
+        int whole = data.length - data.length % _idBytes;
+        for (int i = 0; i < whole; i += _idBytes) {
+            byte[] raw = Arrays.copyOfRange(data, i, i + _idBytes);
+            if (!sorted(raw)) {
+                _tail.add(Utils.toHex(raw));
+            }
+        }
+        if (whole < data.length) {
+            try (FileChannel ch = FileChannel.open(_tailFile.toPath(),
+                    StandardOpenOption.WRITE)) {
+                ch.truncate(whole);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** @return whether the raw id RAW is in the sorted file.
+     *  @param raw a raw id */
+    private boolean sorted(byte[] raw) {
+        int n = stored();
+        int pos = lowerBound(raw, 0, n);
+        return pos < n && compare(pos, raw) == 0;
+    }
+
+    /** @return up to LIMIT full ids beginning with the hexadecimal PREFIX,
+     *  in ascending order.
+     *  @param prefix an abbreviated id
+     *  @param limit the maximum number of matches wanted */
+    List<String> matches(String prefix, int limit) {
+        ArrayList<String> result = new ArrayList<String>();
+        if (prefix.isEmpty() || prefix.length() > 2 * _idBytes
+            || !prefix.matches("[0-9a-f]+")) {
+            return result;
+        }
+        byte[] low = Utils.fromHex(pad(prefix, '0'));
+        byte[] high = Utils.fromHex(pad(prefix, 'f'));
+        int i = 0, hi = 0;
+        if (_map != null) {
+            i = lowerBound(low, bucketStart(low[0] & UNSIGNED),
+                           fanout(high[0] & UNSIGNED));
+            hi = fanout(high[0] & UNSIGNED);
+        }
+        Iterator<String> tail = _tail.subSet(pad(prefix, '0'), true,
+                                             pad(prefix, 'f'), true)
+            .iterator();
+        String next = tail.hasNext() ? tail.next() : null;
+        while (result.size() < limit) {
+            String fromFile = i < hi && compare(i, high) <= 0
+                ? Utils.toHex(id(i)) : null;
+            if (fromFile == null && next == null) {
+                break;
+            } else if (next == null
+                       || (fromFile != null && fromFile.compareTo(next) < 0)) {
+                result.add(fromFile);
+                i += 1;
+            } else {
+                result.add(next);
+                next = tail.hasNext() ? tail.next() : null;
+            }
+        }
+        return result;
+    }
+
+    /** Add the commit id ID to the index, if it is not already present,
+     *  by appending it to the tail, and merge the tail into the sorted
+     *  file once it is full.
+     *  @param id a full commit id */
+    void add(String id) {
+        byte[] raw = Utils.fromHex(id);
+        if (_tail.contains(id) || sorted(raw)) {
+            return;
+        }
+        if (_tail.size() + 1 >= MAX_TAIL) {
+            addAll(List.of(id));
+            return;
+        }
+        try {
+            Files.write(_tailFile.toPath(), raw, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _tail.add(id);
+    }
+
+    /** Add each of the commit ids in IDS to the index, together with the
+     *  ids in the tail.  The new ids are sorted and merged with the
+     *  existing ones in a single pass, copying the runs of existing ids
+     *  between them in bulk, the sorted file is rewritten once, and the
+     *  tail is emptied.
+     *  @param ids full commit ids */
+    void addAll(List<String> ids) {
+        ArrayList<byte[]> sorted = new ArrayList<byte[]>();
+        for (String id : ids) {
+            sorted.add(Utils.fromHex(id));
+        }
+        for (String id : _tail) {
+            sorted.add(Utils.fromHex(id));
+        }
+        sorted.sort(CommitIndex::compare);
+        int n = stored();
+        ArrayList<byte[]> added = new ArrayList<byte[]>();
+        for (byte[] raw : sorted) {
+            if (!added.isEmpty()
+                && compare(added.get(added.size() - 1), raw) == 0) {
+                continue;
+            }
+            int pos = lowerBound(raw, 0, n);
+            if (pos < n && compare(pos, raw) == 0) {
+                continue;
+            }
+            added.add(raw);
+        }
+        if (added.isEmpty() && exists()) {
+            return;
+        }
+        ByteBuffer out = ByteBuffer.allocate(FANOUT_BYTES
+                                             + (n + added.size()) * _idBytes);
+        int[] counts = new int[FANOUT];
+        for (byte[] raw : added) {
+            counts[raw[0] & UNSIGNED] += 1;
+        }
+        int extra = 0;
+        for (int b = 0; b < FANOUT; b += 1) {
+            extra += counts[b];
+            out.putInt((n == 0 ? 0 : fanout(b)) + extra);
+        }
+        int i = 0;
+        for (byte[] raw : added) {
+            int pos = lowerBound(raw, i, n);
+            copyIds(out, i, pos);
+            out.put(raw);
+            i = pos;
+        }
+        copyIds(out, i, n);
+        write(out.array());
+        _tailFile.delete();
+        _tail.clear();
+    }
+
+    /** Append the existing ids at positions [FROM, TO) to OUT.
+     *  @param out the new contents of the file
+     *  @param from the first position copied
+     *  @param to one past the last position copied */
+    private void copyIds(ByteBuffer out, int from, int to) {
+        if (from == to) {
+            return;
+        }
+        ByteBuffer view = _map.duplicate();
+        view.position(FANOUT_BYTES + from * _idBytes);
+        view.limit(FANOUT_BYTES + to * _idBytes);
+        out.put(view);
+    }
+
+    /** Atomically replace the index file with DATA and remap it.
+     *  @param data the new contents of the file */
+    private void write(byte[] data) {
+        File tmp = new File(_file.getPath() + ".tmp");
+        Utils.writeContents(tmp, data);
+        try {
+            Files.move(tmp.toPath(), _file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        remap();
+    }
+
+    /** Map the index file into memory, if it exists. */
+    private void remap() {
+        if (!_file.exists()) {
+            _map = null;
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(_file.toPath(),
+                                               StandardOpenOption.READ)) {
+            _map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** @return the number of ids whose first byte is at most B.
+     *  @param b a byte value */
+    private int fanout(int b) {
+        return _map.getInt(b * Integer.BYTES);
+    }
+
+    /** @return the position of the first id whose first byte is B.
+     *  @param b a byte value */
+    private int bucketStart(int b) {
+        return b == 0 ? 0 : fanout(b - 1);
+    }
+
+    /** @return the raw id at position I.
+     *  @param i an index less than size() */
+    private byte[] id(int i) {
+        byte[] result = new byte[_idBytes];
+        ByteBuffer view = _map.duplicate();
+        view.position(FANOUT_BYTES + i * _idBytes);
+        view.get(result);
+        return result;
+    }
+
+    /** @return the first position in [LO, HI) whose id is not less than
+     *  KEY, or HI if there is none.
+     *  @param key a raw id
+     *  @param lo the first candidate
+     *  @param hi one past the last candidate */
+    private int lowerBound(byte[] key, int lo, int hi) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(mid, key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** @return the comparison of the id at position I with KEY.
+     *  @param i an index less than size()
+     *  @param key a raw id */
+    private int compare(int i, byte[] key) {
+        int base = FANOUT_BYTES + i * _idBytes;
+        for (int k = 0; k < _idBytes; k += 1) {
+            int c = (_map.get(base + k) & UNSIGNED) - (key[k] & UNSIGNED);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** @return the unsigned lexicographic comparison of raw ids A and B.
+     *  @param a a raw id
+     *  @param b a raw id */
+    static int compare(byte[] a, byte[] b) {
+        for (int k = 0; k < a.length; k += 1) {
+            int c = (a[k] & UNSIGNED) - (b[k] & UNSIGNED);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** @return PREFIX extended to a full id with copies of FILL.
+     *  @param prefix an abbreviated id
+     *  @param fill the digit to append */
+    private String pad(String prefix, char fill) {
+        StringBuilder result = new StringBuilder(prefix);
+        while (result.length() < 2 * _idBytes) {
+            result.append(fill);
+        }
+        return result.toString();
+    }
+
+    /** The sorted index file. */
+    private final File _file;
+
+    /** The file of ids appended since the last merge. */
+    private final File _tailFile;
+
+    /** The ids in the tail file, in hexadecimal, sorted. */
+    private final TreeSet<String> _tail;
+
+    /** Number of bytes in a raw commit id. */
+    private final int _idBytes;
+
+    /** The index file mapped into memory, or null if it does not exist. */
+    private ByteBuffer _map;
+}
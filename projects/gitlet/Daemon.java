@@ -0,0 +1,193 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/** A long-running gitlet that keeps one repository, with its object
+ *  store and caches, open across many commands.  Commands arrive one
+ *  per line, either on standard input or over a Unix-domain socket, and
+ *  are split into words as a shell would, with double quotes grouping
+ *  words.  The output of each command is sent back followed by a line
+ *  holding a single ".", any output line that itself begins with "."
+ *  getting a second one in front.  The line "stats" is answered with the
+ *  size and hit and miss counts of the commit cache.  The line "stop"
+ *  shuts a socket daemon down; a pipe daemon stops at end of input.
+ *  Repository state is saved every gitlet.flushMillis milliseconds, and
+ *  on stopping.
+ *  While the daemon runs, it alone should change the repository.
+ *  @author sky
+ */
+class Daemon {
+
+    /** Default milliseconds between saves of the repository state. */
+    static final long DEFAULT_FLUSH = 1000;
+
+    /** Ends each response. */
+    static final String END = ".";
+
+    /** Asks a socket daemon to shut down. */
+    static final String STOP = "stop";
+
+    /** Asks for the commit cache's counters. */
+    static final String STATS = "stats";
+
+    /** A daemon serving REPO.
+     *  @param repo the repository, already loaded */
+    Daemon(Git repo) {
+        _repo = repo;
+    }
+
+    /** Serve commands read from IN, writing responses to OUT, until IN
+     *  is exhausted.
+     *  @param in the command stream
+     *  @param out where responses go */
+    void serve(InputStream in, OutputStream out) {
+        ScheduledExecutorService flusher = startFlusher();
+        try {
+            session(in, out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            flusher.shutdown();
+            flush();
+        }
+    }
+
+    /** Serve clients connecting to the Unix-domain socket at PATH, one
+     *  at a time, until one of them sends STOP.
+     *  @param path where to create the socket */
+    void serve(Path path) {
+        ScheduledExecutorService flusher = startFlusher();
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            Files.deleteIfExists(path);
+            server.bind(UnixDomainSocketAddress.of(path));
+            while (!_stopped) {
+                try (SocketChannel client = server.accept()) {
+                    session(Channels.newInputStream(client),
+                            Channels.newOutputStream(client));
+                } catch (IOException excp) {
+                    /* The client went away; wait for the next one. */
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            flusher.shutdown();
+            flush();
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException excp) {
+                /* Ignore: the socket is only a rendezvous point. */
+            }
+        }
+    }
+
+    /** Run each command line read from IN, writing its response to OUT,
+     *  until IN is exhausted or STOP is read.
+     *  @param in the command stream
+     *  @param out where responses go */
+    private void session(InputStream in, OutputStream out)
+        throws IOException {
+        BufferedReader lines = new BufferedReader(
+            new InputStreamReader(in, StandardCharsets.UTF_8));
+        PrintStream reply = new PrintStream(out, true,
+                                            StandardCharsets.UTF_8);
+        for (String line = lines.readLine(); line != null;
+             line = lines.readLine()) {
+            if (line.trim().equals(STOP)) {
+                _stopped = true;
+                reply.println(END);
+                return;
+            }
+            String output = line.trim().equals(STATS) ? stats()
+                : execute(Main.split(line));
+            if (output.endsWith("\n")) {
+                output = output.substring(0, output.length() - 1);
+            }
+            if (!output.isEmpty()) {
+                for (String text : output.split("\n", -1)) {
+                    if (text.startsWith(END)) {
+                        reply.print(END);
+                    }
+                    reply.println(text);
+                }
+            }
+            reply.println(END);
+        }
+    }
+
+    /** @return everything printed while running the command ARGS, which
+     *  is checked as Main checks a command line.  A command that fails
+     *  in any way leaves only its error message as the response, and the
+     *  daemon carries on with the next one.
+     *  @param args a command and its operands */
+    private synchronized String execute(String[] args) {
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(captured, true,
+                                      StandardCharsets.UTF_8));
+        try {
+            if (args.length > 0 && args[0].equals("daemon")) {
+                Utils.message("A daemon is already running.");
+                throw new GitletException();
+            }
+            Main.execute(args);
+        } catch (GitletException excp) {
+            /* The message has already been printed. */
+        } catch (RuntimeException excp) {
+            Utils.message("%s", excp.getMessage() != null
+                          ? excp.getMessage() : excp.toString());
+        } finally {
+            System.setOut(stdout);
+        }
+        return captured.toString(StandardCharsets.UTF_8);
+    }
+
+    /** @return the commit cache's summary line, between commands. */
+    private synchronized String stats() {
+        return _repo.cache().stats();
+    }
+
+    /** @return a thread that saves the repository state every
+     *  gitlet.flushMillis milliseconds. */
+    private ScheduledExecutorService startFlusher() {
+        long period = Long.getLong("gitlet.flushMillis", DEFAULT_FLUSH);
+        ScheduledExecutorService flusher =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "gitlet-flush");
+                t.setDaemon(true);
+                return t;
+            });
+        flusher.scheduleWithFixedDelay(this::flush, period, period,
+                                       TimeUnit.MILLISECONDS);
+        return flusher;
+    }
+
+    /** Save the repository state, between commands. */
+    private synchronized void flush() {
+        _repo.save();
+    }
+
+    /** The repository being served. */
+    private final Git _repo;
+
+    /** Whether a client has asked the daemon to stop. */
+    private volatile boolean _stopped;
+}
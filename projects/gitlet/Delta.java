@@ -0,0 +1,191 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+
+/** Binary deltas between two versions of a file.  A delta is a header
+ *  giving the lengths of the base and of the result, followed by a
+ *  sequence of instructions, each of which either copies a range of the
+ *  base or inserts literal bytes:
+ *      COPY:   0x80, OFFSET (varint), LENGTH (varint)
+ *      INSERT: N (1 <= N <= 127), followed by N literal bytes
+ *  @author sky
+ */
+class Delta {
+
+    /** Size of the blocks of the base that are indexed for matching. */
+    private static final int BLOCK = 16;
+
+    /** Multiplier of the rolling hash over a block. */
+    private static final int MULT = 31;
+
+    /** Opcode of a copy instruction. */
+    private static final int COPY = 0x80;
+
+    /** Largest number of literal bytes in one insert instruction. */
+    private static final int MAX_INSERT = 0x7f;
+
+    /** Mask of the payload bits of one varint byte. */
+    private static final int VARINT_MASK = 0x7f;
+
+    /** Bit marking a varint byte that is followed by another. */
+    private static final int VARINT_MORE = 0x80;
+
+    /** Number of payload bits in one varint byte. */
+    private static final int VARINT_SHIFT = 7;
+
+    /** Mask converting a byte to an unsigned value. */
+    private static final int UNSIGNED = 0xff;
+
+    /** @return a delta that transforms BASE into TARGET.
+     *  @param base the prior version
+     *  @param target the new version */
+    static byte[] create(byte[] base, byte[] target) {
+        HashMap<Integer, Integer> blocks = new HashMap<Integer, Integer>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+        int top = 1;
+        for (int k = 1; k < BLOCK; k += 1) {
+            top *= MULT;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+        int pending = 0;
+        int i = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (i + BLOCK <= target.length) {
+            Integer m = blocks.get(h);
+            if (m != null && same(base, m, target, i, BLOCK)) {
+                int s = m, t = i;
+                while (s > 0 && t > pending && base[s - 1] == target[t - 1]) {
+                    s -= 1;
+                    t -= 1;
+                }
+                int len = i - t + BLOCK;
+                while (s + len < base.length && t + len < target.length
+                       && base[s + len] == target[t + len]) {
+                    len += 1;
+                }
+                insert(out, target, pending, t);
+                out.write(COPY);
+                writeVarint(out, s);
+                writeVarint(out, len);
+                i = pending = t + len;
+                if (i + BLOCK <= target.length) {
+                    h = hash(target, i);
+                }
+                continue;
+            }
+            if (i + BLOCK < target.length) {
+                h = (h - top * (target[i] & UNSIGNED)) * MULT
+                    + (target[i + BLOCK] & UNSIGNED);
+            }
+            i += 1;
+        }
+        insert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /** @return the result of applying DELTA to BASE.
+     *  @param base the version DELTA was computed against
+     *  @param delta a delta produced by create */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = new int[] {0};
+        int baseLen = readVarint(delta, pos);
+        int resultLen = readVarint(delta, pos);
+        if (baseLen != base.length) {
+            throw new IllegalArgumentException("delta base mismatch");
+        }
+        byte[] result = new byte[resultLen];
+        int r = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]] & UNSIGNED;
+            pos[0] += 1;
+            if (op == COPY) {
+                int offset = readVarint(delta, pos);
+                int len = readVarint(delta, pos);
+                System.arraycopy(base, offset, result, r, len);
+                r += len;
+            } else {
+                System.arraycopy(delta, pos[0], result, r, op);
+                pos[0] += op;
+                r += op;
+            }
+        }
+        if (r != resultLen) {
+            throw new IllegalArgumentException("corrupt delta");
+        }
+        return result;
+    }
+
+    /** Write insert instructions for TARGET[FROM .. TO) onto OUT.
+     *  @param out the delta being built
+     *  @param target the new version
+     *  @param from the first literal byte
+     *  @param to one past the last literal byte */
+    private static void insert(ByteArrayOutputStream out, byte[] target,
+                               int from, int to) {
+        while (from < to) {
+            int n = Math.min(MAX_INSERT, to - from);
+            out.write(n);
+            out.write(target, from, n);
+            from += n;
+        }
+    }
+
+    /** @return the hash of the BLOCK bytes of DATA starting at START.
+     *  @param data the bytes to hash
+     *  @param start the first byte of the block */
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int k = start; k < start + BLOCK; k += 1) {
+            h = h * MULT + (data[k] & UNSIGNED);
+        }
+        return h;
+    }
+
+    /** @return whether A[I .. I+LEN) equals B[J .. J+LEN).
+     *  @param a first array
+     *  @param i start in A
+     *  @param b second array
+     *  @param j start in B
+     *  @param len number of bytes to compare */
+    private static boolean same(byte[] a, int i, byte[] b, int j, int len) {
+        for (int k = 0; k < len; k += 1) {
+            if (a[i + k] != b[j + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Write the non-negative VAL onto OUT, seven bits per byte.
+     *  @param out the destination
+     *  @param val the value to write */
+    static void writeVarint(ByteArrayOutputStream out, long val) {
+        while (val > VARINT_MASK) {
+            out.write((int) (val & VARINT_MASK) | VARINT_MORE);
+            val >>>= VARINT_SHIFT;
+        }
+        out.write((int) val);
+    }
+
+    /** @return the varint in DATA at POS[0], advancing POS[0] past it.
+     *  @param data the encoded bytes
+     *  @param pos a one-element cursor into DATA */
+    static int readVarint(byte[] data, int[] pos) {
+        int result = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = data[pos[0]] & UNSIGNED;
+            pos[0] += 1;
+            result |= (b & VARINT_MASK) << shift;
+            shift += VARINT_SHIFT;
+        } while ((b & VARINT_MORE) != 0);
+        return result;
+    }
+}
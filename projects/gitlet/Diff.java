@@ -0,0 +1,466 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/** Line-level differences between two texts, found with Myers' O(ND)
+ *  algorithm in its linear-space form: each range is split at the middle
+ *  snake of an optimal edit path and the halves compared recursively, so
+ *  only two vectors of N + M entries are live per level and the N by M
+ *  edit graph is never built.  Texts are read through ByteBuffers, which
+ *  may map blobs or working files directly.  Edits are reported in order
+ *  as they are found, so the unified format can be written hunk by hunk.
+ *  @author sky
+ */
+class Diff {
+
+    /** Lines of unchanged context around each unified hunk. */
+    static final int CONTEXT = 3;
+
+    /** Bytes examined when deciding whether a text is binary. */
+    static final int BINARY_PROBE = 8000;
+
+    /** Receives the differences between two texts. */
+    interface Edits {
+        /** Lines [A0 .. A1) of the first text were replaced by lines
+         *  [B0 .. B1) of the second.  Successive calls are ordered and
+         *  do not touch.
+         *  @param a0 first changed line of the first text
+         *  @param a1 end of the changed lines of the first text
+         *  @param b0 first changed line of the second text
+         *  @param b1 end of the changed lines of the second text */
+        void edit(int a0, int a1, int b0, int b1);
+    }
+
+    /** Report to OUT, in order, the edits turning A into B.
+     *  @param a the first text
+     *  @param b the second text
+     *  @param out receives the edits */
+    static void compare(Lines a, Lines b, Edits out) {
+        Coalescer edits = new Coalescer(out);
+        new Diff(a, b, edits).compare(0, a.size(), 0, b.size());
+        edits.flush();
+    }
+
+    /** Write a unified diff of A, called NAMEA, against B, called NAMEB,
+     *  to OUT, writing nothing if they are equal.
+     *  @param nameA the name shown for A, such as a/f.txt or /dev/null
+     *  @param nameB the name shown for B
+     *  @param a the old text
+     *  @param b the new text
+     *  @param out where the diff goes */
+    static void unified(String nameA, String nameB, Lines a, Lines b,
+                        OutputStream out) {
+        try {
+            if (a.binary() || b.binary()) {
+                out.write(String.format("Binary files %s and %s differ\n",
+                                        nameA, nameB)
+                          .getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            Unified hunks = new Unified(nameA, nameB, a, b, out);
+            compare(a, b, hunks);
+            hunks.flush();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** A comparison of A with B reporting to OUT.
+     *  @param a the first text
+     *  @param b the second text
+     *  @param out receives the edits */
+    private Diff(Lines a, Lines b, Edits out) {
+        _a = a;
+        _b = b;
+        _out = out;
+    }
+
+    /** Report the edits turning lines [A0 .. A1) of the first text into
+     *  lines [B0 .. B1) of the second.
+     *  @param a0 start of the first range
+     *  @param a1 end of the first range
+     *  @param b0 start of the second range
+     *  @param b1 end of the second range */
+    private void compare(int a0, int a1, int b0, int b1) {
+        while (a0 < a1 && b0 < b1 && _a.same(a0, _b, b0)) {
+            a0 += 1;
+            b0 += 1;
+        }
+        while (a0 < a1 && b0 < b1 && _a.same(a1 - 1, _b, b1 - 1)) {
+            a1 -= 1;
+            b1 -= 1;
+        }
+        if (a0 == a1 || b0 == b1) {
+            if (a0 < a1 || b0 < b1) {
+                _out.edit(a0, a1, b0, b1);
+            }
+            return;
+        }
+        long mid = bisect(a0, a1, b0, b1);
+        int x = (int) (mid >>> Integer.SIZE), y = (int) mid;
+        if (mid < 0 || (x == a0 && y == b0) || (x == a1 && y == b1)) {
+            _out.edit(a0, a1, b0, b1);
+            return;
+        }
+        compare(a0, x, b0, y);
+        compare(x, a1, y, b1);
+    }
+
+    /** @return the point at which an optimal path through the edit graph
+     *  of lines [A0 .. A1) and [B0 .. B1) crosses its middle snake, as
+     *  the line in the first text in the high word and the line in the
+     *  second in the low word, or -1 if the ranges share no line.  The
+     *  search runs forward from the start and backward from the end at
+     *  once until the two frontiers overlap.
+     *  @param a0 start of the first range
+     *  @param a1 end of the first range
+     *  @param b0 start of the second range
+     *  @param b1 end of the second range */
+    private long bisect(int a0, int a1, int b0, int b1) {
+        int n = a1 - a0, m = b1 - b0;
+        int maxD = (n + m + 1) / 2;
+        int offset = maxD, length = 2 * maxD + 2;
+        int[] fwd = new int[length], back = new int[length];
+        Arrays.fill(fwd, -1);
+        Arrays.fill(back, -1);
+        fwd[offset + 1] = 0;
+        back[offset + 1] = 0;
+        int delta = n - m;
+        boolean front = (delta & 1) != 0;
+        int k1start = 0, k1end = 0, k2start = 0, k2end = 0;
+        for (int d = 0; d < maxD; d += 1) {
+            for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+                int i = offset + k1;
+                int x1;
+                if (k1 == -d || (k1 != d && fwd[i - 1] < fwd[i + 1])) {
+                    x1 = fwd[i + 1];
+                } else {
+                    x1 = fwd[i - 1] + 1;
+                }
+                int y1 = x1 - k1;
+                while (x1 < n && y1 < m && _a.same(a0 + x1, _b, b0 + y1)) {
+                    x1 += 1;
+                    y1 += 1;
+                }
+                fwd[i] = x1;
+                if (x1 > n) {
+                    k1end += 2;
+                } else if (y1 > m) {
+                    k1start += 2;
+                } else if (front) {
+                    int j = offset + delta - k1;
+                    if (j >= 0 && j < length && back[j] != -1
+                        && x1 >= n - back[j]) {
+                        return point(a0 + x1, b0 + y1);
+                    }
+                }
+            }
+            for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+                int i = offset + k2;
+                int x2;
+                if (k2 == -d || (k2 != d && back[i - 1] < back[i + 1])) {
+                    x2 = back[i + 1];
+                } else {
+                    x2 = back[i - 1] + 1;
+                }
+                int y2 = x2 - k2;
+                while (x2 < n && y2 < m
+                       && _a.same(a1 - x2 - 1, _b, b1 - y2 - 1)) {
+                    x2 += 1;
+                    y2 += 1;
+                }
+                back[i] = x2;
+                if (x2 > n) {
+                    k2end += 2;
+                } else if (y2 > m) {
+                    k2start += 2;
+                } else if (!front) {
+                    int j = offset + delta - k2;
+                    if (j >= 0 && j < length && fwd[j] != -1) {
+                        int x1 = fwd[j];
+                        int y1 = offset + x1 - j;
+                        if (x1 >= n - x2) {
+                            return point(a0 + x1, b0 + y1);
+                        }
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    /** @return X and Y packed into one long.
+     *  @param x a line of the first text
+     *  @param y a line of the second text */
+    private static long point(int x, int y) {
+        return ((long) x << Integer.SIZE) | (y & 0xffffffffL);
+    }
+
+    /** The lines of a text, each a range of a buffer ending just after
+     *  its newline, if it has one, together with a hash of each line so
+     *  that most unequal lines are told apart without reading them. */
+    static class Lines {
+
+        /** The lines of the text in BUF, from its position to its limit.
+         *  @param buf the text */
+        Lines(ByteBuffer buf) {
+            _buf = buf.slice();
+            int len = _buf.limit();
+            int count = 0;
+            for (int i = 0; i < len; i += 1) {
+                if (_buf.get(i) == '\n') {
+                    count += 1;
+                }
+            }
+            if (len > 0 && _buf.get(len - 1) != '\n') {
+                count += 1;
+            }
+            _starts = new int[count + 1];
+            _hashes = new int[count];
+            int line = 0, h = 0;
+            for (int i = 0; i < len; i += 1) {
+                byte c = _buf.get(i);
+                h = HASH_MULT * h + c;
+                if (c == '\n' || i == len - 1) {
+                    _hashes[line] = h;
+                    line += 1;
+                    _starts[line] = i + 1;
+                    h = 0;
+                }
+            }
+            int probe = Math.min(len, BINARY_PROBE);
+            for (int i = 0; i < probe && !_binary; i += 1) {
+                _binary = _buf.get(i) == 0;
+            }
+        }
+
+        /** @return the number of lines. */
+        int size() {
+            return _hashes.length;
+        }
+
+        /** @return whether the text looks binary, holding a NUL byte
+         *  near its start. */
+        boolean binary() {
+            return _binary;
+        }
+
+        /** @return whether line I of this equals line J of OTHER.
+         *  @param i a line of this text
+         *  @param other another text
+         *  @param j a line of OTHER */
+        boolean same(int i, Lines other, int j) {
+            if (_hashes[i] != other._hashes[j]) {
+                return false;
+            }
+            int len = _starts[i + 1] - _starts[i];
+            if (len != other._starts[j + 1] - other._starts[j]) {
+                return false;
+            }
+            for (int p = _starts[i], q = other._starts[j], e = p + len;
+                 p < e; p += 1, q += 1) {
+                if (_buf.get(p) != other._buf.get(q)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** @return whether line I ends with a newline.
+         *  @param i a line */
+        boolean terminated(int i) {
+            return _buf.get(_starts[i + 1] - 1) == '\n';
+        }
+
+        /** Write line I, with its newline if any, to OUT.
+         *  @param i a line
+         *  @param out the destination */
+        void write(int i, OutputStream out) throws IOException {
+            int len = _starts[i + 1] - _starts[i];
+            if (_buf.hasArray()) {
+                out.write(_buf.array(), _buf.arrayOffset() + _starts[i],
+                          len);
+            } else {
+                byte[] copy = new byte[len];
+                _buf.get(_starts[i], copy);
+                out.write(copy);
+            }
+        }
+
+        /** Multiplier of the line hash. */
+        private static final int HASH_MULT = 31;
+
+        /** The text. */
+        private final ByteBuffer _buf;
+
+        /** Offset of each line, and of the end of the text. */
+        private final int[] _starts;
+
+        /** Hash of each line. */
+        private final int[] _hashes;
+
+        /** Whether the text is binary. */
+        private boolean _binary;
+    }
+
+    /** Passes edits on, joining those that touch. */
+    private static class Coalescer implements Edits {
+        /** Joins edits before passing them to OUT.
+         *  @param out the final receiver */
+        Coalescer(Edits out) {
+            _out = out;
+        }
+
+        @Override
+        public void edit(int a0, int a1, int b0, int b1) {
+            if (_held != null && _held[1] == a0 && _held[3] == b0) {
+                _held[1] = a1;
+                _held[3] = b1;
+                return;
+            }
+            flush();
+            _held = new int[] {a0, a1, b0, b1};
+        }
+
+        /** Pass on the edit being held, if any. */
+        void flush() {
+            if (_held != null) {
+                _out.edit(_held[0], _held[1], _held[2], _held[3]);
+                _held = null;
+            }
+        }
+
+        /** The final receiver. */
+        private final Edits _out;
+
+        /** The edit not yet passed on, which may grow. */
+        private int[] _held;
+    }
+
+    /** Writes edits as unified-diff hunks, each as soon as the next
+     *  edit is too far away to share it. */
+    private static class Unified implements Edits {
+        /** Writes hunks of A, called NAMEA, against B, called NAMEB, to
+         *  OUT.
+         *  @param nameA the name shown for A
+         *  @param nameB the name shown for B
+         *  @param a the old text
+         *  @param b the new text
+         *  @param out the destination */
+        Unified(String nameA, String nameB, Lines a, Lines b,
+                OutputStream out) {
+            _nameA = nameA;
+            _nameB = nameB;
+            _a = a;
+            _b = b;
+            _out = out;
+            _hunk = new ArrayList<int[]>();
+        }
+
+        @Override
+        public void edit(int a0, int a1, int b0, int b1) {
+            try {
+                if (!_hunk.isEmpty()
+                    && a0 - _hunk.get(_hunk.size() - 1)[1] > 2 * CONTEXT) {
+                    flush();
+                }
+                _hunk.add(new int[] {a0, a1, b0, b1});
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Write the hunk being gathered, if any. */
+        void flush() throws IOException {
+            if (_hunk.isEmpty()) {
+                return;
+            }
+            if (!_headed) {
+                print("--- " + _nameA + "\n+++ " + _nameB + "\n");
+                _headed = true;
+            }
+            int[] first = _hunk.get(0), last = _hunk.get(_hunk.size() - 1);
+            int lo = Math.max(0, first[0] - CONTEXT);
+            int hi = Math.min(_a.size(), last[1] + CONTEXT);
+            int bLo = first[2] - (first[0] - lo);
+            int bHi = last[3] + (hi - last[1]);
+            print(String.format("@@ -%s +%s @@\n", range(lo, hi),
+                                range(bLo, bHi)));
+            int a = lo;
+            for (int[] e : _hunk) {
+                for (; a < e[0]; a += 1) {
+                    line(' ', _a, a);
+                }
+                for (int i = e[0]; i < e[1]; i += 1) {
+                    line('-', _a, i);
+                }
+                for (int j = e[2]; j < e[3]; j += 1) {
+                    line('+', _b, j);
+                }
+                a = e[1];
+            }
+            for (; a < hi; a += 1) {
+                line(' ', _a, a);
+            }
+            _hunk.clear();
+            _out.flush();
+        }
+
+        /** @return the unified form of the line range [LO .. HI).
+         *  @param lo the first line
+         *  @param hi the end of the range */
+        private static String range(int lo, int hi) {
+            if (hi == lo) {
+                return lo + ",0";
+            }
+            return (lo + 1) + "," + (hi - lo);
+        }
+
+        /** Write line I of TEXT, marked with TAG.
+         *  @param tag ' ', '-' or '+'
+         *  @param text the text holding the line
+         *  @param i the line */
+        private void line(char tag, Lines text, int i) throws IOException {
+            _out.write(tag);
+            text.write(i, _out);
+            if (!text.terminated(i)) {
+                print("\n\\ No newline at end of file\n");
+            }
+        }
+
+        /** Write S to the output.
+         *  @param s text to write */
+        private void print(String s) throws IOException {
+            _out.write(s.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /** Name of the old text. */
+        private final String _nameA;
+        /** Name of the new text. */
+        private final String _nameB;
+        /** The old text. */
+        private final Lines _a;
+        /** The new text. */
+        private final Lines _b;
+        /** The destination. */
+        private final OutputStream _out;
+        /** Edits of the hunk being gathered. */
+        private final ArrayList<int[]> _hunk;
+        /** Whether the file header has been written. */
+        private boolean _headed;
+    }
+
+    /** The first text. */
+    private final Lines _a;
+
+    /** The second text. */
+    private final Lines _b;
+
+    /** Receives the edits. */
+    private final Edits _out;
+}
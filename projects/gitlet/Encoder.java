@@ -0,0 +1,92 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/** Builds the compact binary encodings of gitlet's persistent structures,
+ *  and reads them back out of ByteBuffers.  All integers are big-endian;
+ *  strings are an int byte count followed by UTF-8; object ids are their
+ *  raw bytes.
+ *  @author sky
+ */
+class Encoder {
+
+    /** An empty encoding. */
+    Encoder() {
+        _out = new ByteArrayOutputStream();
+    }
+
+    /** @return this, after appending the byte B.
+     *  @param b the value to append */
+    Encoder putByte(int b) {
+        _out.write(b);
+        return this;
+    }
+
+    /** @return this, after appending the int N.
+     *  @param n the value to append */
+    Encoder putInt(int n) {
+        _out.writeBytes(ByteBuffer.allocate(Integer.BYTES).putInt(n).array());
+        return this;
+    }
+
+    /** @return this, after appending the long N.
+     *  @param n the value to append */
+    Encoder putLong(long n) {
+        _out.writeBytes(ByteBuffer.allocate(Long.BYTES).putLong(n).array());
+        return this;
+    }
+
+    /** @return this, after appending the length-prefixed string S.
+     *  @param s the value to append */
+    Encoder putString(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        putInt(bytes.length);
+        _out.writeBytes(bytes);
+        return this;
+    }
+
+    /** @return this, after appending the raw bytes of the object id ID.
+     *  @param id a full hexadecimal object id */
+    Encoder putId(String id) {
+        _out.writeBytes(Utils.fromHex(id));
+        return this;
+    }
+
+    /** @return the bytes appended so far. */
+    byte[] toByteArray() {
+        return _out.toByteArray();
+    }
+
+    /** @return the length-prefixed string at the position of BUF, which
+     *  is advanced past it.
+     *  @param buf the encoded data */
+    static String getString(ByteBuffer buf) {
+        int len = buf.getInt();
+        String result;
+        if (buf.hasArray()) {
+            result = new String(buf.array(), buf.arrayOffset()
+                                + buf.position(), len, StandardCharsets.UTF_8);
+            buf.position(buf.position() + len);
+        } else {
+            byte[] bytes = new byte[len];
+            buf.get(bytes);
+            result = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return result;
+    }
+
+    /** @return the raw object id of HASH at the position of BUF, in
+     *  hexadecimal, advancing BUF past it.
+     *  @param buf the encoded data
+     *  @param hash the algorithm of the id */
+    static String getId(ByteBuffer buf, Hash hash) {
+        byte[] raw = new byte[hash.bytes()];
+        buf.get(raw);
+        return Utils.toHex(raw);
+    }
+
+    /** The bytes appended so far. */
+    private final ByteArrayOutputStream _out;
+}
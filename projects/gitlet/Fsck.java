@@ -0,0 +1,245 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Checks the integrity of an object store.  Every object is read and
+ *  rehashed, splitting the work across a ForkJoinPool, and checked to
+ *  hash to its id.  The ids each object refers to (a commit's parents and
+ *  tree, a tree's entries, a delta's base, a chunked blob's chunks) are
+ *  gathered as it is read and afterwards checked to be present.  Objects
+ *  that nothing refers to and that are not roots are reported as
+ *  dangling.
+ *  @author sky
+ */
+class Fsck {
+
+    /** Largest number of objects checked without splitting. */
+    static final int THRESHOLD = 64;
+
+    /** Bytes in a mebibyte, for reporting throughput. */
+    private static final double MIB = 1 << 20;
+
+    /** A checker for the objects of STORE.
+     *  @param store the object store */
+    Fsck(ObjectStore store) {
+        _store = store;
+        _refs = new ConcurrentHashMap<String, String>();
+        _problems = ConcurrentHashMap.newKeySet();
+        _bytes = new AtomicLong();
+    }
+
+    /** Check every object, treating the ids in ROOTS as referenced, and
+     *  return the problems found followed by a summary line.
+     *  @param roots ids of objects the repository refers to directly
+     *  @return the lines of the report */
+    List<String> run(Collection<String> roots) {
+        long start = System.nanoTime();
+        String[] ids = _store.ids().toArray(new String[0]);
+        ForkJoinPool.commonPool().invoke(new Task(ids, 0, ids.length));
+        for (String root : roots) {
+            _refs.putIfAbsent(root, "repository");
+        }
+        TreeSet<String> present = new TreeSet<String>();
+        for (String id : ids) {
+            present.add(id);
+        }
+        int missing = 0, dangling = 0;
+        for (Map.Entry<String, String> e : _refs.entrySet()) {
+            if (!present.contains(e.getKey())) {
+                _problems.add("missing " + e.getKey() + " (referred to by "
+                              + e.getValue() + ")");
+                missing += 1;
+            }
+        }
+        for (String id : present) {
+            if (!_refs.containsKey(id)) {
+                _problems.add("dangling " + kind(_store.type(id)) + " "
+                              + id);
+                dangling += 1;
+            }
+        }
+        int corrupt = _problems.size() - missing - dangling;
+        ArrayList<String> report = new ArrayList<String>(
+            new TreeSet<String>(_problems));
+        double secs = Math.max(1e-9, (System.nanoTime() - start)
+                               / (double) TimeUnit.SECONDS.toNanos(1));
+        report.add(String.format("Checked %d objects (%.1f MiB) in %.2f s:"
+                                 + " %.0f objects/s, %.1f MiB/s; %d corrupt,"
+                                 + " %d missing, %d dangling.",
+                                 ids.length, _bytes.get() / MIB, secs,
+                                 ids.length / secs,
+                                 _bytes.get() / MIB / secs, corrupt,
+                                 missing, dangling));
+        return report;
+    }
+
+    /** Rehash the object ID and gather the ids it refers to.
+     *  @param id the id of a stored object */
+    private void check(String id) {
+        byte type = _store.type(id);
+        try {
+            List<String> chunks = _store.chunks(id);
+            if (chunks != null) {
+                checkChunked(id, chunks);
+                return;
+            }
+            ByteBuffer buf = _store.buffer(id);
+            _bytes.addAndGet(buf.remaining());
+            String base = _store.deltaBase(id);
+            if (base != null) {
+                _refs.putIfAbsent(base, id);
+            }
+            String hash;
+            switch (type) {
+            case ObjectStore.COMMIT:
+                Commit commit = Commit.decode(buf, _store.hash());
+                hash = commit.uID().equals(id)
+                    ? commit.rehash(_store.hash()) : null;
+                if (commit.tree() != null) {
+                    _refs.putIfAbsent(commit.tree(), id);
+                }
+                if (commit.parents() != null) {
+                    for (String parent : commit.parents()) {
+                        _refs.putIfAbsent(parent, id);
+                    }
+                }
+                break;
+            case ObjectStore.TREE:
+                byte[] data = new byte[buf.remaining()];
+                buf.get(data);
+                hash = Utils.hash(_store.hash(), "tree", data);
+                Tree tree = Tree.decode(data, _store.hash());
+                for (String ref : tree.ids(Tree.TREE)) {
+                    _refs.putIfAbsent(ref, id);
+                }
+                for (String ref : tree.ids(Tree.BLOB)) {
+                    _refs.putIfAbsent(ref, id);
+                }
+                break;
+            case ObjectStore.CHUNK:
+                byte[] chunk = new byte[buf.remaining()];
+                buf.get(chunk);
+                hash = Utils.hash(_store.hash(), "chunk", chunk);
+                break;
+            default:
+                hash = idOf(buf);
+                break;
+            }
+            if (!id.equals(hash)) {
+                _problems.add("corrupt " + kind(type) + " " + id);
+            }
+        } catch (RuntimeException excp) {
+            _problems.add("corrupt " + kind(type) + " " + id + ": "
+                          + excp.getMessage());
+        }
+    }
+
+    /** Rehash the chunked blob ID, whose chunks are CHUNKS, one chunk at
+     *  a time, and record its references to them.  The chunks' bytes are
+     *  counted toward the throughput only where each CHUNK object is
+     *  itself checked, so that they are not counted twice.
+     *  @param id the id of a chunked blob
+     *  @param chunks the ids of its chunks */
+    private void checkChunked(String id, List<String> chunks) {
+        for (String chunk : chunks) {
+            _refs.putIfAbsent(chunk, id);
+        }
+        MessageDigest md = digest();
+        for (String chunk : chunks) {
+            ByteBuffer buf = _store.buffer(chunk);
+            if (buf == null) {
+                return;
+            }
+            md.update(buf);
+        }
+        if (!id.equals(Utils.toHex(md.digest()))) {
+            _problems.add("corrupt blob " + id);
+        }
+    }
+
+    /** @return the id of the remaining bytes of BUF.
+     *  @param buf the bytes to hash */
+    private String idOf(ByteBuffer buf) {
+        MessageDigest md = digest();
+        md.update(buf);
+        return Utils.toHex(md.digest());
+    }
+
+    /** @return a new digest of the repository's hash. */
+    private MessageDigest digest() {
+        return _store.hash().digest();
+    }
+
+    /** @return the name of objects of type TYPE.
+     *  @param type an object type */
+    private static String kind(byte type) {
+        switch (type) {
+        case ObjectStore.COMMIT:
+            return "commit";
+        case ObjectStore.TREE:
+            return "tree";
+        case ObjectStore.CHUNK:
+            return "chunk";
+        default:
+            return "blob";
+        }
+    }
+
+    /** Checks a range of objects, splitting it in halves until the
+     *  pieces are small. */
+    private class Task extends RecursiveAction {
+        /** A task that checks IDS[LO .. HI).
+         *  @param ids the ids of all objects
+         *  @param lo the first index handled
+         *  @param hi one past the last index handled */
+        Task(String[] ids, int lo, int hi) {
+            _ids = ids;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo <= THRESHOLD) {
+                for (int i = _lo; i < _hi; i += 1) {
+                    check(_ids[i]);
+                }
+            } else {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Task(_ids, _lo, mid), new Task(_ids, mid, _hi));
+            }
+        }
+
+        /** The ids of all objects. */
+        private final String[] _ids;
+        /** First index handled by this task. */
+        private final int _lo;
+        /** One past the last index handled by this task. */
+        private final int _hi;
+    }
+
+    /** The object store. */
+    private final ObjectStore _store;
+
+    /** Each referenced id, mapped to the first object found to refer to
+     *  it. */
+    private final ConcurrentHashMap<String, String> _refs;
+
+    /** The problems found, as report lines. */
+    private final Set<String> _problems;
+
+    /** Total bytes read. */
+    private final AtomicLong _bytes;
+}
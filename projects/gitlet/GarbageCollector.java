@@ -0,0 +1,176 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** Removes objects that no branch or staged file can reach.  Reachable
+ *  objects are marked by walking from the roots through commit parents,
+ *  trees, the bases of deltas and the chunks of chunked blobs.  An
+ *  unreachable object is not removed at once: the time it was first found
+ *  unreachable is kept in the pending file as
+ *      COUNT (int)  (ID  TIME (long))...
+ *  and it is removed only once it has stayed unreachable for the grace
+ *  period, given in milliseconds by the system property gitlet.gcGrace
+ *  (default DEFAULT_GRACE), which protects objects written by a command
+ *  still in progress.  The survivors are then repacked densely.
+ *  @author sky
+ */
+class GarbageCollector {
+
+    /** Default time an object must stay unreachable to be removed. */
+    static final long DEFAULT_GRACE = TimeUnit.DAYS.toMillis(14);
+
+    /** A collector for the objects of STORE that records pending objects
+     *  in PENDING.
+     *  @param store the object store
+     *  @param pending the file of objects awaiting removal */
+    GarbageCollector(ObjectStore store, File pending) {
+        _store = store;
+        _pending = pending;
+        _live = new HashSet<String>();
+    }
+
+    /** Mark the commit UID, and everything it reaches, as live.
+     *  @param uid the id of a commit */
+    void markCommit(String uid) {
+        ArrayDeque<String> work = new ArrayDeque<String>();
+        work.push(uid);
+        while (!work.isEmpty()) {
+            String id = work.pop();
+            if (!_live.add(id)) {
+                continue;
+            }
+            ByteBuffer buf = _store.buffer(id);
+            if (buf == null) {
+                continue;
+            }
+            Commit commit = Commit.decode(buf, _store.hash());
+            markTree(commit.tree());
+            if (commit.parents() != null) {
+                for (String parent : commit.parents()) {
+                    work.push(parent);
+                }
+            }
+        }
+    }
+
+    /** Mark the blob ID, the bases it is stored against and its chunks
+     *  as live.
+     *  @param id the id of a blob */
+    void markBlob(String id) {
+        while (id != null && _live.add(id)) {
+            List<String> chunks = _store.chunks(id);
+            if (chunks != null) {
+                _live.addAll(chunks);
+            }
+            id = _store.deltaBase(id);
+        }
+    }
+
+    /** Mark the tree ID, and everything it names, as live.
+     *  @param id the id of a tree, or null for an empty tree */
+    private void markTree(String id) {
+        if (id == null || !_live.add(id)) {
+            return;
+        }
+        Tree tree = Tree.read(_store, id);
+        for (String sub : tree.ids(Tree.TREE)) {
+            markTree(sub);
+        }
+        for (String blob : tree.ids(Tree.BLOB)) {
+            markBlob(blob);
+        }
+    }
+
+    /** Remove the objects that have been unreachable for the grace
+     *  period, or all unreachable objects if NOW, and repack the rest.
+     *  @param now whether to ignore the grace period
+     *  @return a one-line summary of what was done */
+    String collect(boolean now) {
+        long grace = Long.getLong("gitlet.gcGrace", DEFAULT_GRACE);
+        long time = System.currentTimeMillis();
+        HashMap<String, Long> seen = readPending();
+        HashMap<String, Long> waiting = new HashMap<String, Long>();
+        for (String id : _store.ids()) {
+            if (_live.contains(id)) {
+                continue;
+            }
+            long first = seen.getOrDefault(id, time);
+            if (!now && time - first < grace) {
+                waiting.put(id, first);
+            }
+        }
+        for (String id : waiting.keySet()) {
+            byte type = _store.type(id);
+            if (type == ObjectStore.COMMIT) {
+                markCommit(id);
+            } else if (type == ObjectStore.TREE) {
+                markTree(id);
+            } else {
+                markBlob(id);
+            }
+        }
+        HashSet<String> keep = new HashSet<String>();
+        int removed = 0;
+        for (String id : _store.ids()) {
+            if (_live.contains(id)) {
+                keep.add(id);
+            } else {
+                removed += 1;
+            }
+        }
+        waiting.keySet().retainAll(keep);
+        long before = _store.size();
+        _store.repack(keep);
+        long after = _store.size();
+        writePending(waiting);
+        return String.format("Removed %d objects, kept %d (%d awaiting "
+                             + "removal); reclaimed %d bytes.", removed,
+                             keep.size(), waiting.size(), before - after);
+    }
+
+    /** @return the pending objects and when each was first found
+     *  unreachable. */
+    private HashMap<String, Long> readPending() {
+        HashMap<String, Long> result = new HashMap<String, Long>();
+        if (!_pending.exists()) {
+            return result;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(Utils.readContents(_pending));
+        for (int n = buf.getInt(); n > 0; n -= 1) {
+            String id = Encoder.getId(buf, _store.hash());
+            result.put(id, buf.getLong());
+        }
+        return result;
+    }
+
+    /** Save PENDING as the objects awaiting removal.
+     *  @param pending ids mapped to when they were first unreachable */
+    private void writePending(Map<String, Long> pending) {
+        if (pending.isEmpty()) {
+            _pending.delete();
+            return;
+        }
+        Encoder out = new Encoder();
+        out.putInt(pending.size());
+        for (Map.Entry<String, Long> e : pending.entrySet()) {
+            out.putId(e.getKey()).putLong(e.getValue());
+        }
+        Utils.writeContents(_pending, out.toByteArray());
+    }
+
+    /** The object store. */
+    private final ObjectStore _store;
+
+    /** File of objects awaiting removal. */
+    private final File _pending;
+
+    /** Ids of the objects found reachable. */
+    private final HashSet<String> _live;
+}
@@ -1,28 +1,64 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.Arrays;
-import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
 
 /**
+ * The repository: its branches, staging area and objects.  The state
+ * kept between commands is saved to .gitlet/myrepo in a versioned
+ * binary form:
+ *     MAGIC (int)  VERSION (1 byte)  HEAD
+ *     BRANCH-COUNT (int)  (NAME  COMMIT-ID)...
+ *     STAGED-COUNT (int)  (PATH  BLOB-ID)...
+ *     REMOVED-COUNT (int)  PATH...
+ * with length-prefixed strings and raw ids.
  * @author sky
  * */
 
-public class Git implements Serializable {
+public class Git {
+
+    /** identifies a repository state file. */
+    static final int MAGIC = 0x6769746c;
+
+    /** version of the repository state format. */
+    static final int FORMAT = 1;
+
+    /** size past which the journal is folded into the snapshot. */
+    static final long COMPACT_BYTES = 1 << 16;
+
+    /** stores path to the file of remotes. */
+    static final String REMOTES = ".gitlet/remotes";
+
+    /** size of the buffer through which diffs are written. */
+    static final int DIFF_BUFFER = 1 << 16;
 
     /**
-     *
+     * a new repository whose object ids are computed by HASH.
+     * @param hash the algorithm of the repository's ids
      */
-    public Git() {
-        Commit init = Commit.initialCommit();
+    public Git(Hash hash) {
+        _hash = hash;
+        Commit init = Commit.initialCommit(hash);
         new File(".gitlet").mkdir();
-        new File(".gitlet/commits").mkdir();
-        new File(".gitlet/staging").mkdir();
-
-        File initialFile = new File(".gitlet/commits/" + init.uID());
-        Utils.writeContents(initialFile, Utils.serialize(init));
+        hash.write(new File(".gitlet"));
+        writeCommit(init);
 
         _head = "master";
         _branches = new HashMap<String, String>();
@@ -33,32 +69,327 @@ public class Git implements Serializable {
     }
 
     /**
-     * adds file to staging.
+     * a repository whose state has already been read.
+     * @param head the current branch
+     * @param branches the heads of all branches
+     * @param staging the staged files
+     * @param untracked the files staged for removal
+     * @param hash the algorithm of the repository's ids
+     */
+    private Git(String head, HashMap<String, String> branches,
+                HashMap<String, String> staging,
+                ArrayList<String> untracked, Hash hash) {
+        _hash = hash;
+        _head = head;
+        _branches = branches;
+        _staging = staging;
+        _untrackedFiles = untracked;
+    }
+
+    /**
+     * reads the repository state saved in FILE, decoding it straight out
+     * of a memory mapping of the file, with the object hash recorded in
+     * the directory holding FILE.
+     * @param file the state file
+     * @return the repository
+     */
+    static Git read(File file) {
+        Hash hash = Hash.read(file.getAbsoluteFile().getParentFile());
+        ByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (buf.remaining() < Integer.BYTES + 1 || buf.getInt() != MAGIC) {
+            throw new IllegalArgumentException("not a gitlet repository");
+        }
+        int version = buf.get();
+        if (version != FORMAT) {
+            throw new IllegalArgumentException("unknown repository format "
+                    + version);
+        }
+        String head = Encoder.getString(buf);
+        HashMap<String, String> branches = new HashMap<String, String>();
+        for (int n = buf.getInt(); n > 0; n -= 1) {
+            String name = Encoder.getString(buf);
+            branches.put(name, Encoder.getId(buf, hash));
+        }
+        HashMap<String, String> staging = new HashMap<String, String>();
+        for (int n = buf.getInt(); n > 0; n -= 1) {
+            String path = Encoder.getString(buf);
+            staging.put(path, Encoder.getId(buf, hash));
+        }
+        ArrayList<String> untracked = new ArrayList<String>();
+        for (int n = buf.getInt(); n > 0; n -= 1) {
+            untracked.add(Encoder.getString(buf));
+        }
+        return new Git(head, branches, staging, untracked, hash);
+    }
+
+    /**
+     * reads the repository state from the snapshot in FILE and then
+     * replays the changes recorded in the journal JOURNAL.
+     * @param file the snapshot
+     * @param journal the journal file
+     * @return the repository
+     */
+    static Git load(File file, File journal) {
+        Git repo = read(file);
+        repo._snapshot = file;
+        repo._journal = new Journal(journal);
+        for (ByteBuffer rec : repo._journal.records()) {
+            repo.replay(rec);
+        }
+        return repo;
+    }
+
+    /**
+     * makes the changes made by this command durable by appending them to
+     * the journal, and folds the journal into a fresh snapshot once it has
+     * grown past COMPACT_BYTES, and saves the hashes newly learned by the
+     * stat index.  Main does not save after a read-only command, so
+     * those leave the stat index as it was.
+     */
+    void save() {
+        if (_statIndex != null) {
+            _statIndex.save();
+        }
+        if (_journal == null || !_journal.dirty()) {
+            return;
+        }
+        _journal.flush();
+        if (_journal.size() > COMPACT_BYTES) {
+            File tmp = new File(_snapshot.getPath() + ".tmp");
+            write(tmp);
+            if (!tmp.renameTo(_snapshot)) {
+                throw new IllegalArgumentException("cannot replace "
+                        + _snapshot);
+            }
+            _journal.truncate();
+        }
+    }
+
+    /**
+     * applies one journal record to the state.
+     * @param rec the record, positioned at its opcode
+     */
+    private void replay(ByteBuffer rec) {
+        byte op = rec.get();
+        switch (op) {
+        case Journal.SET_BRANCH:
+            String name = Encoder.getString(rec);
+            _branches.put(name, Encoder.getId(rec, _hash));
+            break;
+        case Journal.DELETE_BRANCH:
+            _branches.remove(Encoder.getString(rec));
+            break;
+        case Journal.SET_HEAD:
+            _head = Encoder.getString(rec);
+            break;
+        case Journal.STAGE:
+            String path = Encoder.getString(rec);
+            _staging.put(path, Encoder.getId(rec, _hash));
+            break;
+        case Journal.UNSTAGE:
+            _staging.remove(Encoder.getString(rec));
+            break;
+        case Journal.REMOVE:
+            String removed = Encoder.getString(rec);
+            if (!_untrackedFiles.contains(removed)) {
+                _untrackedFiles.add(removed);
+            }
+            break;
+        case Journal.UNREMOVE:
+            _untrackedFiles.remove(Encoder.getString(rec));
+            break;
+        case Journal.CLEAR_STAGED:
+            _staging.clear();
+            break;
+        case Journal.CLEAR_REMOVED:
+            _untrackedFiles.clear();
+            break;
+        default:
+            throw new IllegalArgumentException("bad journal record " + op);
+        }
+    }
+
+    /**
+     * queues REC in the journal, if this repository keeps one.
+     * @param rec the encoded change
+     */
+    private void journal(Encoder rec) {
+        if (_journal != null) {
+            _journal.record(rec);
+        }
+    }
+
+    /**
+     * points BRANCH at the commit UID.
+     * @param branch name of branch
+     * @param uid id of commit
+     */
+    private void setBranch(String branch, String uid) {
+        _branches.put(branch, uid);
+        journal(new Encoder().putByte(Journal.SET_BRANCH).putString(branch)
+                .putId(uid));
+    }
+
+    /**
+     * deletes BRANCH.
+     * @param branch name of branch
+     */
+    private void deleteBranch(String branch) {
+        _branches.remove(branch);
+        journal(new Encoder().putByte(Journal.DELETE_BRANCH)
+                .putString(branch));
+    }
+
+    /**
+     * makes BRANCH the current branch.
+     * @param branch name of branch
+     */
+    private void setHead(String branch) {
+        _head = branch;
+        journal(new Encoder().putByte(Journal.SET_HEAD).putString(branch));
+    }
+
+    /**
+     * stages the blob HASH as the new contents of F.
      * @param f name of file
+     * @param hash id of blob
      */
-    public void add(String f) {
-        File file = new File(f);
-        if (!file.exists()) {
-            Utils.message("File does not exist.");
-            throw new GitletException();
+    private void stage(String f, String hash) {
+        _staging.put(f, hash);
+        journal(new Encoder().putByte(Journal.STAGE).putString(f).putId(hash));
+    }
+
+    /**
+     * unstages F.
+     * @param f name of file
+     */
+    private void unstage(String f) {
+        _staging.remove(f);
+        journal(new Encoder().putByte(Journal.UNSTAGE).putString(f));
+    }
+
+    /**
+     * marks F for removal at the next commit.
+     * @param f name of file
+     */
+    private void markRemoved(String f) {
+        if (!_untrackedFiles.contains(f)) {
+            _untrackedFiles.add(f);
+        }
+        journal(new Encoder().putByte(Journal.REMOVE).putString(f));
+    }
+
+    /**
+     * no longer marks F for removal.
+     * @param f name of file
+     */
+    private void unmarkRemoved(String f) {
+        _untrackedFiles.remove(f);
+        journal(new Encoder().putByte(Journal.UNREMOVE).putString(f));
+    }
+
+    /** unstages every file. */
+    private void clearStaged() {
+        _staging.clear();
+        journal(new Encoder().putByte(Journal.CLEAR_STAGED));
+    }
+
+    /** unmarks every file marked for removal. */
+    private void clearRemoved() {
+        _untrackedFiles.clear();
+        journal(new Encoder().putByte(Journal.CLEAR_REMOVED));
+    }
+
+    /**
+     * saves the repository state to FILE.
+     * @param file the state file
+     */
+    void write(File file) {
+        Encoder out = new Encoder();
+        out.putInt(MAGIC).putByte(FORMAT).putString(_head);
+        out.putInt(_branches.size());
+        for (String name : _branches.keySet()) {
+            out.putString(name).putId(_branches.get(name));
+        }
+        out.putInt(_staging.size());
+        for (String path : _staging.keySet()) {
+            out.putString(path).putId(_staging.get(path));
+        }
+        out.putInt(_untrackedFiles.size());
+        for (String path : _untrackedFiles) {
+            out.putString(path);
+        }
+        Utils.writeContents(file, out.toByteArray());
+    }
+
+    /**
+     * adds files to staging.  Each of PATHS may name a file or a directory,
+     * whose files, other than ignored ones, are added recursively; the
+     * single path "-A" adds every file in the working tree and also stages
+     * the removal of tracked files that have been deleted.  The files are
+     * hashed and stored in parallel on a ForkJoinPool, and the staging area
+     * is updated once at the end.
+     * @param paths names of files or directories
+     */
+    public void add(String... paths) {
+        boolean all = paths.length == 1 && paths[0].equals("-A");
+        ArrayList<String> names = new ArrayList<String>();
+        if (all) {
+            names.addAll(workTree().files(""));
+        } else {
+            for (String path : paths) {
+                File file = new File(path);
+                if (!file.exists()) {
+                    Utils.message("File does not exist.");
+                    throw new GitletException();
+                }
+                if (file.isDirectory()) {
+                    names.addAll(workTree().files(WorkTree.normalize(path)));
+                } else {
+                    names.add(WorkTree.normalize(path));
+                }
+            }
         }
-        String fileHash = Utils.sha1(Utils.readContentsAsString(file));
         Commit head = convertUIDToCommit(head());
         HashMap<String, String> files = head.files();
-
-        File blobFile = new File(".gitlet/staging/" + fileHash);
         boolean check = (files == null);
-        if (check || !files.containsKey(f) || !files.get(f).equals(fileHash)) {
-            _staging.put(f, fileHash);
-            String contents = Utils.readContentsAsString(file);
-            Utils.writeContents(blobFile, contents);
-        } else {
-            if (blobFile.exists()) {
-                _staging.remove(f);
+
+        int n = names.size();
+        String[] fs = names.toArray(new String[n]);
+        String[] bases = new String[n];
+        String[] hashes = new String[n];
+        for (int i = 0; i < n; i += 1) {
+            bases[i] = check ? null : files.get(fs[i]);
+        }
+        ForkJoinPool.commonPool().invoke(new AddTask(fs, bases, hashes,
+                store(), statIndex(), 0, n));
+
+        for (int i = 0; i < n; i += 1) {
+            String f = fs[i];
+            if (bases[i] == null || !bases[i].equals(hashes[i])) {
+                stage(f, hashes[i]);
+            } else if (_staging.containsKey(f)) {
+                unstage(f);
+            }
+            if (_untrackedFiles.contains(f)) {
+                unmarkRemoved(f);
             }
         }
-        if (_untrackedFiles.contains(f)) {
-            _untrackedFiles.remove(f);
+        if (all && !check) {
+            for (String f : files.keySet()) {
+                if (!new File(f).exists() && !_untrackedFiles.contains(f)) {
+                    if (_staging.containsKey(f)) {
+                        unstage(f);
+                    }
+                    markRemoved(f);
+                }
+            }
         }
     }
 
@@ -74,18 +405,14 @@ public class Git implements Serializable {
         }
 
         Commit head = convertUIDToCommit(head());
-        HashMap<String, String> tracked = head.files();
-
-        if (tracked == null) {
-            tracked = new HashMap<String, String>();
-        }
+        HashMap<String, String> changes = new HashMap<String, String>();
 
         if (_staging.size() != 0 || _untrackedFiles.size() != 0) {
             for (String fileName : _staging.keySet()) {
-                tracked.put(fileName, _staging.get(fileName));
+                changes.put(fileName, _staging.get(fileName));
             }
             for (String fileName : _untrackedFiles) {
-                tracked.remove(fileName);
+                changes.put(fileName, null);
             }
         } else {
             Utils.message("No changes added to the commit.");
@@ -93,13 +420,13 @@ public class Git implements Serializable {
         }
 
         String[] parent = new String[]{head.uID()};
-        Commit newCommit = new Commit(msg, tracked, parent, true);
-        File newCommFile = new File(".gitlet/commits/" + newCommit.uID());
-        Utils.writeObject(newCommFile, newCommit);
+        String tree = Tree.update(store(), head.tree(), changes);
+        Commit newCommit = new Commit(msg, tree, parent, true, _hash);
+        writeCommit(newCommit);
 
-        _staging = new HashMap<String, String>();
-        _untrackedFiles = new ArrayList<String>();
-        _branches.put(_head, newCommit.uID());
+        clearStaged();
+        clearRemoved();
+        setBranch(_head, newCommit.uID());
     }
 
     /**
@@ -113,31 +440,27 @@ public class Git implements Serializable {
             throw new GitletException();
         }
         Commit head = convertUIDToCommit(head());
-        HashMap<String, String> tracked = head.files();
-
-        if (tracked == null) {
-            tracked = new HashMap<String, String>();
-        }
+        HashMap<String, String> changes = new HashMap<String, String>();
 
         if (_staging.size() != 0 || _untrackedFiles.size() != 0) {
             for (String fileName : _staging.keySet()) {
-                tracked.put(fileName, _staging.get(fileName));
+                changes.put(fileName, _staging.get(fileName));
             }
             for (String fileName : _untrackedFiles) {
-                tracked.remove(fileName);
+                changes.put(fileName, null);
             }
         } else {
             Utils.message("No changes added to the commit.");
             throw new GitletException();
         }
 
-        Commit newCommit = new Commit(msg, tracked, parents, true);
-        File newCommFile = new File(".gitlet/commits/" + newCommit.uID());
-        Utils.writeObject(newCommFile, newCommit);
+        String tree = Tree.update(store(), head.tree(), changes);
+        Commit newCommit = new Commit(msg, tree, parents, true, _hash);
+        writeCommit(newCommit);
 
-        _staging = new HashMap<String, String>();
-        _untrackedFiles = new ArrayList<String>();
-        _branches.put(_head, newCommit.uID());
+        clearStaged();
+        clearRemoved();
+        setBranch(_head, newCommit.uID());
     }
 
     /**
@@ -161,7 +484,7 @@ public class Git implements Serializable {
             System.out.println("commit " + uid);
             System.out.format("Merge: %s %s\n",
                     commit.parents()[0].substring(0, 7),
-                    commit.parents()[0].substring(0, 7));
+                    commit.parents()[1].substring(0, 7));
             System.out.println("Date: " + commit.date());
             System.out.println(commit.msg());
         } else {
@@ -178,6 +501,7 @@ public class Git implements Serializable {
      * @param f name of file
      */
     public void rm(String f) {
+        f = WorkTree.normalize(f);
         File file = new File(f);
         Commit head = convertUIDToCommit(head());
         HashMap<String, String> tracked = head.files();
@@ -187,13 +511,12 @@ public class Git implements Serializable {
         }
         boolean changed = false;
         if (_staging.containsKey(f)) {
-            _staging.remove(f);
+            unstage(f);
             changed = true;
         }
         if (tracked != null && tracked.containsKey(f)) {
-            _untrackedFiles.add(f);
-            File toRemove = new File(f);
-            Utils.restrictedDelete(toRemove);
+            markRemoved(f);
+            WorkTree.delete(f);
             changed = true;
         }
         if (!changed) {
@@ -215,15 +538,51 @@ public class Git implements Serializable {
         }
     }
 
+    /**
+     * displays, like log, the commits along the first-parent history of
+     * the head that changed PATH, skipping without reading them those
+     * whose changed-path filter rules the path out.  As log only reads,
+     * it uses the commit-graph and the filters where they exist but never
+     * builds or extends them; commits they lack are read instead.
+     * @param operands -- followed by one path
+     */
+    public void log(String[] operands) {
+        if (operands.length != 2 || !operands[0].equals("--")) {
+            Utils.message("Incorrect operands.");
+            throw new GitletException();
+        }
+        String path = operands[1];
+        CommitGraph graph = new File(".gitlet/commit-graph").exists()
+            ? commitGraph() : null;
+        String uid = head();
+        while (uid != null) {
+            String parent;
+            if (graph != null && graph.contains(uid)) {
+                List<String> parents = graph.parents(uid);
+                parent = parents.isEmpty() ? null : parents.get(0);
+            } else {
+                parent = convertUIDToCommit(uid).pID();
+            }
+            if (!changedPaths().contains(uid)
+                || changedPaths().mayHaveChanged(uid, path)) {
+                String now = Tree.find(store(),
+                        convertUIDToCommit(uid).tree(), path);
+                String before = parent == null ? null : Tree.find(store(),
+                        convertUIDToCommit(parent).tree(), path);
+                if (!Objects.equals(now, before)) {
+                    print(uid);
+                }
+            }
+            uid = parent;
+        }
+    }
+
     /**
      * displays information about all commits ever made.
      */
     public void globalLog() {
-        File commitFolder = new File(".gitlet/commits");
-        File[] commits = commitFolder.listFiles();
-
-        for (File file : commits) {
-            print(file.getName());
+        for (String uid : store().ids(ObjectStore.COMMIT)) {
+            print(uid);
         }
     }
 
@@ -232,14 +591,12 @@ public class Git implements Serializable {
      * @param msg the msg of the commit
      */
     public void find(String msg) {
-        File commitFolder = new File(".gitlet/commits");
-        File[] commits = commitFolder.listFiles();
         boolean found = false;
 
-        for (File file : commits) {
-            Commit commit = convertUIDToCommit(file.getName());
+        for (String uid : store().ids(ObjectStore.COMMIT)) {
+            Commit commit = convertUIDToCommit(uid);
             if (commit.msg().equals(msg)) {
-                System.out.println(file.getName());
+                System.out.println(uid);
                 found = true;
             }
         }
@@ -296,11 +653,74 @@ public class Git implements Serializable {
         }
         System.out.println();
         System.out.println("=== Modifications Not Staged For Commit ===");
+        for (String modified : modifications()) {
+            System.out.println(modified);
+        }
         System.out.println();
         System.out.println("=== Untracked Files ===");
+        for (String file : untracked(workTree().files(""))) {
+            System.out.println(file);
+        }
         System.out.println();
     }
 
+    /**
+     * finds the working files whose contents differ from what the next
+     * commit would record for them.  Contents are compared through the
+     * stat index, so only files touched since they were last hashed are
+     * read.
+     * @return each such file followed by " (modified)" or " (deleted)",
+     * in order
+     */
+    private List<String> modifications() {
+        HashMap<String, String> tracked = convertUIDToCommit(head()).files();
+        if (tracked == null) {
+            tracked = new HashMap<String, String>();
+        }
+        TreeSet<String> paths = new TreeSet<String>(tracked.keySet());
+        paths.addAll(_staging.keySet());
+        ArrayList<String> result = new ArrayList<String>();
+        for (String path : paths) {
+            String expected;
+            if (_staging.containsKey(path)) {
+                expected = _staging.get(path);
+            } else if (!_untrackedFiles.contains(path)) {
+                expected = tracked.get(path);
+            } else {
+                continue;
+            }
+            File file = new File(path);
+            if (!file.isFile()) {
+                result.add(path + " (deleted)");
+            } else if (!statIndex().hash(path, file).equals(expected)) {
+                result.add(path + " (modified)");
+            }
+        }
+        return result;
+    }
+
+    /**
+     * finds the working files that are neither staged for addition nor
+     * tracked by the head commit, counting files staged for removal
+     * that have reappeared.
+     * @param working the files of the working tree, in order
+     * @return the names of such files, in order
+     */
+    private List<String> untracked(List<String> working) {
+        HashMap<String, String> tracked = convertUIDToCommit(head()).files();
+        ArrayList<String> result = new ArrayList<String>();
+        for (String path : working) {
+            if (_staging.containsKey(path)) {
+                continue;
+            }
+            if (tracked == null || !tracked.containsKey(path)
+                    || _untrackedFiles.contains(path)) {
+                result.add(path);
+            }
+        }
+        return result;
+    }
+
     /**
      * covers first 2 checkout methods
      * Takes the version of the file as it exists in the head commit,
@@ -326,15 +746,12 @@ public class Git implements Serializable {
             Utils.message("Incorrect operands");
             throw new GitletException();
         }
+        fileName = WorkTree.normalize(fileName);
         cID = convertID(cID);
         Commit comm = convertUIDToCommit(cID);
         HashMap<String, String> tracked = comm.files();
         if (tracked.containsKey(fileName)) {
-            File f = new File(fileName);
-            String blobFileName = ".gitlet/staging/" + tracked.get(fileName);
-            File g = new File(blobFileName);
-            String contents = Utils.readContentsAsString(g);
-            Utils.writeContents(f, contents);
+            writeWorkingFile(fileName, tracked.get(fileName));
         } else {
             Utils.message("File does not exist in that commit.");
             throw new GitletException();
@@ -359,30 +776,23 @@ public class Git implements Serializable {
         }
         String cid = _branches.get(branch);
         HashMap<String, String> files = convertUIDToCommit(cid).files();
-        String currString = System.getProperty("user.dir");
-        File curr = new File(currString);
-        checkUntracked(curr);
-        for (File file : curr.listFiles()) {
-            if (files == null) {
-                Utils.restrictedDelete(file);
-            } else {
-                if (!file.getName().equals(".gitlet")
-                        && !files.containsKey(file.getName())) {
-                    Utils.restrictedDelete(file);
-                }
+        List<String> working = workTree().files("");
+        checkUntracked(working);
+        Checkout plan = new Checkout(store(), statIndex());
+        for (String path : working) {
+            if (files == null || !files.containsKey(path)) {
+                plan.delete(path);
             }
         }
         if (files != null) {
             for (String file : files.keySet()) {
-                String s = ".gitlet/staging/" + files.get(file);
-                File fs = new File(s);
-                String contents = Utils.readContentsAsString(fs);
-                Utils.writeContents(new File(file), contents);
+                plan.write(file, files.get(file));
             }
         }
-        _staging = new HashMap<String, String>();
-        _untrackedFiles = new ArrayList<String>();
-        _head = branch;
+        plan.run();
+        clearStaged();
+        clearRemoved();
+        setHead(branch);
     }
 
     /**
@@ -391,44 +801,29 @@ public class Git implements Serializable {
      * @return the
      */
     private String convertID(String id) {
-        if (id.length() == Utils.UID_LENGTH) {
+        if (id.length() == _hash.hexLength()) {
             return id;
         }
-        File commitFolder = new File(".gitlet/commits");
-        File[] commits = commitFolder.listFiles();
-
-        for (File file : commits) {
-            if (file.getName().contains(id)) {
-                return file.getName();
-            }
+        List<String> found = commitIndex().matches(id, 2);
+        if (found.size() == 1) {
+            return found.get(0);
+        } else if (found.size() > 1) {
+            Utils.message("Ambiguous commit id.");
+            throw new GitletException();
         }
         Utils.message("No commit with that id exists.");
         throw new GitletException();
     }
 
     /**
-     * checked whether the inputted file is untracked.
-     * @param curr (ent) file
+     * checked whether any working file is untracked.
+     * @param working the files of the working tree
      */
-    private void checkUntracked(File curr) {
-        Commit head = convertUIDToCommit(head());
-        HashMap<String, String> tracked = head.files();
-        for (File file : curr.listFiles()) {
-            if (tracked == null) {
-                if (curr.listFiles().length > 1) {
-                    Utils.message("There is an untracked file in the way;"
-                            + " delete it or add it first.");
-                    throw new GitletException();
-                }
-            } else {
-                if (!file.getName().equals(".gitlet")
-                        && !tracked.containsKey(file.getName())
-                        && !_staging.containsKey(file.getName())) {
-                    Utils.message("There is an untracked file in the way;"
-                            + " delete it or add it first.");
-                    throw new GitletException();
-                }
-            }
+    private void checkUntracked(List<String> working) {
+        if (!untracked(working).isEmpty()) {
+            Utils.message("There is an untracked file in the way;"
+                    + " delete it or add it first.");
+            throw new GitletException();
         }
     }
 
@@ -438,7 +833,7 @@ public class Git implements Serializable {
      */
     public void branch(String branch) {
         if (!_branches.containsKey(branch)) {
-            _branches.put(branch, head());
+            setBranch(branch, head());
         } else {
             Utils.message("A branch with that name already exists.");
             throw new GitletException();
@@ -455,7 +850,7 @@ public class Git implements Serializable {
             throw new GitletException();
         }
         if (_branches.containsKey(branch)) {
-            _branches.remove(branch);
+            deleteBranch(branch);
         } else {
             Utils.message("A branch with that name does not exist.");
             throw new GitletException();
@@ -469,22 +864,329 @@ public class Git implements Serializable {
     public void reset(String cid) {
         cid = convertID(cid);
         HashMap<String, String> files = convertUIDToCommit(cid).files();
+        List<String> working = workTree().files("");
+        checkUntracked(working);
 
-        String currString = System.getProperty("user.dir");
-        File curr = new File(currString);
-        checkUntracked(curr);
-
-        for (File file : curr.listFiles()) {
-            if (!files.containsKey(file.getName())) {
-                Utils.restrictedDelete(file);
+        Checkout plan = new Checkout(store(), statIndex());
+        for (String path : working) {
+            if (!files.containsKey(path)) {
+                plan.delete(path);
             }
         }
         for (String file : files.keySet()) {
-            File f = new File(".gitlet/staging/" + files.get(file));
-            Utils.writeContents(new File(file), Utils.readContentsAsString(f));
+            plan.write(file, files.get(file));
         }
-        _staging = new HashMap<String, String>();
-        _branches.put(_head, cid);
+        plan.run();
+        clearStaged();
+        setBranch(_head, cid);
+    }
+
+    /**
+     * prints, as unified diffs, the changes from one commit to another,
+     * or from a commit (the head by default) to the working directory.
+     * @param operands up to two commit ids, then optionally -- and the
+     *                 paths to compare
+     */
+    public void diff(String[] operands) {
+        ArrayList<String> commits = new ArrayList<String>();
+        TreeSet<String> only = null;
+        for (int i = 0; i < operands.length; i += 1) {
+            if (operands[i].equals("--")) {
+                only = new TreeSet<String>(Arrays.asList(operands)
+                        .subList(i + 1, operands.length));
+                break;
+            }
+            commits.add(operands[i]);
+        }
+        if (commits.size() > 2 || (only != null && only.isEmpty())) {
+            Utils.message("Incorrect operands.");
+            throw new GitletException();
+        }
+        Commit older = convertUIDToCommit(commits.isEmpty() ? head()
+                : convertID(commits.get(0)));
+        boolean working = commits.size() < 2;
+        TreeMap<String, String[]> changes;
+        if (working) {
+            changes = workingChanges(older.files());
+        } else {
+            Commit newer = convertUIDToCommit(convertID(commits.get(1)));
+            changes = Tree.diff(store(), older.tree(), newer.tree());
+        }
+        if (only != null) {
+            changes.keySet().retainAll(only);
+        }
+        BufferedOutputStream out =
+            new BufferedOutputStream(System.out, DIFF_BUFFER);
+        for (Map.Entry<String, String[]> e : changes.entrySet()) {
+            String path = e.getKey(), a = e.getValue()[0];
+            String b = e.getValue()[1];
+            Diff.unified(a == null ? "/dev/null" : "a/" + path,
+                         b == null ? "/dev/null" : "b/" + path,
+                         lines(path, a, false), lines(path, b, working),
+                         out);
+        }
+        try {
+            out.flush();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * @return the paths, among those in FILES or staged, whose working
+     * files differ from FILES, each mapped to its blob id in FILES and the
+     * hash of its working file (null where either is absent).
+     * @param files the files of a commit
+     */
+    private TreeMap<String, String[]> workingChanges(
+            HashMap<String, String> files) {
+        TreeSet<String> paths = new TreeSet<String>(files.keySet());
+        paths.addAll(_staging.keySet());
+        TreeMap<String, String[]> result = new TreeMap<String, String[]>();
+        for (String path : paths) {
+            File file = new File(path);
+            String hash = file.isFile() ? statIndex().hash(path, file) : null;
+            String old = files.get(path);
+            if (hash == null ? old != null : !hash.equals(old)) {
+                result.put(path, new String[] {old, hash});
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the lines of the blob ID, or of the working file PATH if
+     * WORKING, both read through mapped buffers; empty if ID is null.
+     * @param path the name of the file
+     * @param id the blob id of its contents, or null
+     * @param working whether to read the working file instead
+     */
+    private Diff.Lines lines(String path, String id, boolean working) {
+        if (id == null) {
+            return new Diff.Lines(ByteBuffer.allocate(0));
+        }
+        if (!working) {
+            return new Diff.Lines(store().buffer(id));
+        }
+        try (FileChannel in = FileChannel.open(new File(path).toPath(),
+                StandardOpenOption.READ)) {
+            return new Diff.Lines(in.map(FileChannel.MapMode.READ_ONLY, 0,
+                                         in.size()));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * removes objects that no branch or staged file reaches, once they
+     * have been unreachable for the grace period, and repacks the rest.
+     * @param operands empty, or --now to skip the grace period
+     */
+    public void gc(String[] operands) {
+        boolean now = operands.length == 1 && operands[0].equals("--now");
+        if (operands.length > 1 || (operands.length == 1 && !now)) {
+            Utils.message("Incorrect operands.");
+            throw new GitletException();
+        }
+        GarbageCollector gc = new GarbageCollector(store(),
+                new File(".gitlet/gc-pending"));
+        for (String uid : _branches.values()) {
+            gc.markCommit(uid);
+        }
+        for (String blob : _staging.values()) {
+            gc.markBlob(blob);
+        }
+        String summary = gc.collect(now);
+        new File(".gitlet/commit-ids").delete();
+        new File(".gitlet/commit-ids.tail").delete();
+        new File(".gitlet/commit-graph").delete();
+        _commitIndex = null;
+        _graph = null;
+        _cache = null;
+        Utils.message("%s", summary);
+    }
+
+    /**
+     * rehashes every stored object and checks that everything referred
+     * to is present, printing the problems found and a summary.
+     */
+    public void fsck() {
+        ArrayList<String> roots = new ArrayList<String>(_branches.values());
+        roots.addAll(_staging.values());
+        for (String line : new Fsck(store()).run(roots)) {
+            System.out.println(line);
+        }
+    }
+
+    /**
+     * saves the .gitlet directory at PATH as the remote NAME.
+     * @param name name of the remote
+     * @param path path of the remote's .gitlet directory, using /
+     */
+    public void addRemote(String name, String path) {
+        TreeMap<String, String> remotes = remotes();
+        if (remotes.containsKey(name)) {
+            Utils.message("A remote with that name already exists.");
+            throw new GitletException();
+        }
+        remotes.put(name, path.replace("/", File.separator));
+        writeRemotes(remotes);
+    }
+
+    /**
+     * forgets the remote NAME.
+     * @param name name of the remote
+     */
+    public void rmRemote(String name) {
+        TreeMap<String, String> remotes = remotes();
+        if (remotes.remove(name) == null) {
+            Utils.message("A remote with that name does not exist.");
+            throw new GitletException();
+        }
+        writeRemotes(remotes);
+    }
+
+    /**
+     * copies the history of BRANCH in the remote NAME that this
+     * repository lacks, and points the branch NAME/BRANCH at its head.
+     * @param name name of the remote
+     * @param branch name of the remote branch
+     */
+    public void fetch(String name, String branch) {
+        File dir = remoteDir(name);
+        Git other = load(new File(dir, "myrepo"), new File(dir, "journal"));
+        String tip = other._branches.get(branch);
+        if (tip == null) {
+            Utils.message("That remote does not have that branch.");
+            throw new GitletException();
+        }
+        ObjectStore theirs = new ObjectStore(dir);
+        try {
+            CommitGraph graph = new CommitGraph(new File(dir,
+                    "commit-graph"), theirs.hash());
+            Transfer transfer = new Transfer(theirs, graph, store(),
+                    new File(".gitlet"));
+            List<String> commits = transfer.negotiate(tip,
+                    _branches.values());
+            transfer.send();
+            commitIndex().addAll(commits);
+            commitGraph();
+            addToGraph(tip);
+            for (String uid : commits) {
+                addChangedPaths(convertUIDToCommit(uid));
+            }
+        } finally {
+            theirs.close();
+        }
+        setBranch(name + "/" + branch, tip);
+    }
+
+    /**
+     * copies the history of the current head that the remote NAME lacks
+     * into it, and points its BRANCH at the head, provided that branch's
+     * head is already in the current history.
+     * @param name name of the remote
+     * @param branch name of the remote branch
+     */
+    public void push(String name, String branch) {
+        File dir = remoteDir(name);
+        Git other = load(new File(dir, "myrepo"), new File(dir, "journal"));
+        String theirHead = other._branches.get(branch);
+        if (theirHead != null && !(commitGraph().contains(theirHead)
+                && theirHead.equals(commitGraph().mergeBase(theirHead,
+                        head())))) {
+            Utils.message("Please pull down remote changes before pushing.");
+            throw new GitletException();
+        }
+        ObjectStore theirs = new ObjectStore(dir);
+        try {
+            Transfer transfer = new Transfer(store(), commitGraph(), theirs,
+                    dir);
+            List<String> commits = transfer.negotiate(head(),
+                    other._branches.values());
+            transfer.send();
+            ChangedPaths paths = new ChangedPaths(new File(dir,
+                    "commit-paths"), theirs.hash());
+            for (String uid : commits) {
+                paths.add(uid, changes(convertUIDToCommit(uid)));
+            }
+            CommitIndex index = new CommitIndex(new File(dir, "commit-ids"),
+                    theirs.hash());
+            if (index.exists()) {
+                index.addAll(commits);
+            }
+            CommitGraph graph = new CommitGraph(new File(dir,
+                    "commit-graph"), theirs.hash());
+            if (graph.exists()) {
+                for (String uid : commits) {
+                    graph.add(convertUIDToCommit(uid));
+                }
+            }
+        } finally {
+            theirs.close();
+        }
+        other.setBranch(branch, head());
+        other.save();
+    }
+
+    /**
+     * fetches BRANCH from the remote NAME and merges it into the current
+     * branch.
+     * @param name name of the remote
+     * @param branch name of the remote branch
+     */
+    public void pull(String name, String branch) {
+        fetch(name, branch);
+        merge(name + "/" + branch);
+    }
+
+    /**
+     * @return the .gitlet directory of the remote NAME, which must use
+     * the same object hash as this repository, since their ids could
+     * not otherwise be compared.
+     * @param name name of the remote
+     */
+    private File remoteDir(String name) {
+        String path = remotes().get(name);
+        if (path == null || !new File(path).isDirectory()) {
+            Utils.message("Remote directory not found.");
+            throw new GitletException();
+        }
+        if (Hash.read(new File(path)) != _hash) {
+            Utils.message("That remote uses a different object hash.");
+            throw new GitletException();
+        }
+        return new File(path);
+    }
+
+    /**
+     * @return the saved remotes, mapping names to .gitlet directories.
+     */
+    private TreeMap<String, String> remotes() {
+        TreeMap<String, String> result = new TreeMap<String, String>();
+        File file = new File(REMOTES);
+        if (!file.exists()) {
+            return result;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(Utils.readContents(file));
+        for (int n = buf.getInt(); n > 0; n -= 1) {
+            String name = Encoder.getString(buf);
+            result.put(name, Encoder.getString(buf));
+        }
+        return result;
+    }
+
+    /**
+     * saves REMOTES as the remotes of this repository.
+     * @param remotes names mapped to .gitlet directories
+     */
+    private void writeRemotes(TreeMap<String, String> remotes) {
+        Encoder out = new Encoder();
+        out.putInt(remotes.size());
+        for (Map.Entry<String, String> e : remotes.entrySet()) {
+            out.putString(e.getKey()).putString(e.getValue());
+        }
+        Utils.writeContents(new File(REMOTES), out.toByteArray());
     }
 
     /**
@@ -510,113 +1212,64 @@ public class Git implements Serializable {
             return;
         }
         if (split.equals(_branches.get(_head))) {
-            _branches.put(_head, _branches.get(branch));
+            reset(_branches.get(branch));
             Utils.message("Current branch fast-forwarded.");
             return;
         }
 
-        HashMap<String, String> splitF = convertUIDToCommit(split).files();
-        mergeHelper(branch);
-        HashMap<String, String> curr = convertUIDToCommit(head()).files();
-        HashMap<String, String> given = convertUIDToCommit(_branches
-                .get(branch)).files();
-
-        for (String fileName : given.keySet()) {
-            if (!splitF.containsKey(fileName)) {
-                if (!curr.containsKey(fileName)) {
-                    String b = _branches.get(branch);
-                    checkout(new String[] {b, "--", fileName});
-                    _staging.put(fileName, given.get(fileName));
-                } else if (!given.containsKey(fileName)) {
-                    continue;
-                } else if (checkMod(fileName, given, curr)) {
-                    String p = ".gitlet/staging/";
-                    File c = new File(p + curr.get(fileName));
-                    File g = new File(p + given.get(fileName));
-                    String contents = "<<<<<<< HEAD\n";
-                    contents += Utils.readContentsAsString(c);
-                    contents += "=======\n";
-                    contents += Utils.readContentsAsString(g) + ">>>>>>>";
-                    Utils.writeContents(new File(fileName), contents);
-                    add(fileName);
-                    Utils.message("Encountered a merge conflict.");
+        checkUntracked(workTree().files(""));
+        String given = _branches.get(branch);
+        String base = convertUIDToCommit(split).tree();
+        TreeMap<String, String[]> ours = Tree.diff(store(), base,
+                convertUIDToCommit(head()).tree());
+        TreeMap<String, String[]> theirs = Tree.diff(store(), base,
+                convertUIDToCommit(given).tree());
+        boolean conflict = false;
+        for (Map.Entry<String, String[]> e : theirs.entrySet()) {
+            String fileName = e.getKey();
+            String[] change = e.getValue(), mine = ours.get(fileName);
+            if (mine == null) {
+                if (change[1] == null) {
+                    rm(fileName);
+                } else {
+                    writeWorkingFile(fileName, change[1]);
+                    stage(fileName, change[1]);
                 }
+            } else if (!Objects.equals(mine[1], change[1])) {
+                conflict |= !mergeFile(fileName, change[0], mine[1],
+                        change[1]);
             }
         }
-        String[] parents = new String[]{head(), _branches.get(branch)};
+        String[] parents = new String[]{head(), given};
         commit("Merged " + branch + " into " + _head + ".", parents);
-    }
-
-    /**
-     * merge helper to shorten merge method.
-     * @param branch name of branch
-     */
-    private void mergeHelper(String branch) {
-        String split = split(branch, _head);
-        HashMap<String, String> splitF = convertUIDToCommit(split).files();
-        HashMap<String, String> curr = convertUIDToCommit(head()).files();
-        HashMap<String, String> given = convertUIDToCommit(_branches
-                .get(branch)).files();
-
-        File current = new File(System.getProperty("user.dir"));
-        checkUntracked(current);
-
-        for (String fileName : splitF.keySet()) {
-            boolean checkGiven = given.containsKey(fileName);
-            boolean checkModCurr = checkMod(fileName, splitF, curr);
-            boolean checkModGiven = checkMod(fileName, splitF, given);
-            if (!checkModCurr) {
-                if (!checkGiven) {
-                    Utils.restrictedDelete(new File(fileName));
-                    rm(fileName);
-                    continue;
-                }
-                if (checkModGiven) {
-                    String b = _branches.get(branch);
-                    checkout(new String[]{b, "--", fileName});
-                    add(fileName);
-                }
-            }
-            if (checkModCurr && checkModGiven) {
-                if (checkMod(fileName, given, curr)) {
-                    mergeConflict(branch, fileName);
-                }
-            }
+        if (conflict) {
+            Utils.message("Encountered a merge conflict.");
         }
     }
 
     /**
-     * checks whether there is a merge conflict.
-     * @param branch name of branch
+     * merges, line by line, the changes to FILE from BASE to OURS and
+     * from BASE to THEIRS into the working file, and stages it.
      * @param file name of file
+     * @param base its blob at the split point, or null
+     * @param ours its blob in the current branch, or null
+     * @param theirs its blob in the given branch, or null
+     * @return whether the changes merged without conflict
      */
-    private void mergeConflict(String branch, String file) {
-        HashMap<String, String> cr = convertUIDToCommit(head()).files();
-        HashMap<String, String> given = convertUIDToCommit(_branches
-                .get(branch)).files();
-        String dir = ".gitlet/staging/";
-        File curr;
-        String c;
-        File give;
-        String g;
-        if (cr.containsKey(file)) {
-            curr = new File(dir + cr.get(file));
-            c = Utils.readContentsAsString(curr);
-        } else {
-            curr = null;
-            c = "";
-        }
-        if (given.containsKey(file)) {
-            give = new File(dir + given.get(file));
-            g = Utils.readContentsAsString(give);
-        } else {
-            give = null;
-            g = "";
+    private boolean mergeFile(String file, String base, String ours,
+                              String theirs) {
+        boolean clean;
+        WorkTree.makeParents(new File(file));
+        try (OutputStream out = new BufferedOutputStream(
+                new FileOutputStream(file), DIFF_BUFFER)) {
+            clean = Merge3.merge(lines(file, base, false),
+                    lines(file, ours, false), lines(file, theirs, false),
+                    out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
         }
-        String x = "<<<<<<< HEAD\n" + c + "=======\n" + g + ">>>>>>>\n";
-        Utils.writeContents(new File(file), x);
         add(file);
-        Utils.message("Encountered a merge conflict.");
+        return clean;
     }
 
     /**
@@ -626,59 +1279,179 @@ public class Git implements Serializable {
      * @return the commit of the split
      */
     private String split(String b1, String b2) {
-        ArrayList<String> bCommits1 = new ArrayList<String>();
-        ArrayList<String> bCommits2 = new ArrayList<String>();
-        String parent1 = _branches.get(b1);
-        String parent2 = _branches.get(b2);
+        String base = commitGraph().mergeBase(_branches.get(b1),
+                _branches.get(b2));
+        if (base == null) {
+            return "";
+        }
+        return base;
+    }
 
-        while (parent1 != null) {
-            bCommits1.add(parent1);
-            parent1 = convertUIDToCommit(parent1).pID();
+    /**
+     * converts the inputting UID to the respected commit.
+     * @param uid the Universal ID of the commit
+     * @return the respected commit
+     */
+    public Commit convertUIDToCommit(String uid) {
+        Commit cached = cache().lookup(uid);
+        if (cached != null) {
+            return cached;
         }
-        while (parent2 != null) {
-            bCommits2.add(parent2);
-            parent2 = convertUIDToCommit(parent2).pID();
+        if (Utils.isObjectId(uid, _hash)
+            && store().type(uid) == ObjectStore.COMMIT) {
+            Commit commit = Commit.decode(store().buffer(uid), _hash);
+            commit.attach(store());
+            cache().put(uid, commit);
+            return commit;
+        } else {
+            Utils.message("No commit with that id exists.");
+            throw new GitletException();
         }
-        for (String commit : bCommits1) {
-            if (bCommits2.contains(commit)) {
-                return commit;
-            }
+    }
+
+    /**
+     * saves COMMIT in the object store.
+     * @param commit the commit to save
+     */
+    private void writeCommit(Commit commit) {
+        store().put(ObjectStore.COMMIT, commit.uID(), commit.encode());
+        commitIndex().add(commit.uID());
+        commitGraph().add(commit);
+        addChangedPaths(commit);
+    }
+
+    /**
+     * records in the changed-path filters the paths COMMIT changed
+     * relative to its first parent.
+     * @param commit a stored commit
+     */
+    private void addChangedPaths(Commit commit) {
+        changedPaths().add(commit.uID(), changes(commit));
+    }
+
+    /**
+     * @return the paths whose files COMMIT changed from its first parent.
+     * @param commit a commit whose trees are in the object store
+     */
+    private Set<String> changes(Commit commit) {
+        String parentTree = null;
+        if (commit.parents() != null && commit.parents().length > 0) {
+            parentTree = convertUIDToCommit(commit.parents()[0]).tree();
         }
-        return "";
+        return Tree.diff(store(), parentTree, commit.tree()).keySet();
     }
 
     /**
-     * returns a boolean to check whether a file has been modified.
-     * @param file we want to check
-     * @param i from
-     * @param j to
-     * @return a boolean
+     * overwrites the working file PATH with the blob HASH and records
+     * its new stat data in the stat index.
+     * @param path the name of the file
+     * @param hash the id of the blob
      */
-    boolean checkMod(String file, HashMap<String, String> i,
-                     HashMap<String, String> j) {
-        if (i.containsKey(file) && j.containsKey(file)) {
-            String hash1 = i.get(file);
-            String hash2 = j.get(file);
-            if (!hash1.equals(hash2)) {
-                return true;
+    private void writeWorkingFile(String path, String hash) {
+        File file = new File(path);
+        WorkTree.makeParents(file);
+        store().copyTo(hash, file);
+        statIndex().record(path, file, hash);
+    }
+
+    /** @return the working tree, with its ignore patterns as they now
+     *  stand. */
+    private WorkTree workTree() {
+        return new WorkTree(new File("."));
+    }
+
+    /** @return the object store, opening it on first use. */
+    ObjectStore store() {
+        if (_store == null) {
+            _store = new ObjectStore(new File(".gitlet"));
+        }
+        return _store;
+    }
+
+    /** @return the index of abbreviated commit ids, building it from the
+     *  object store if it is missing. */
+    CommitIndex commitIndex() {
+        if (_commitIndex == null) {
+            _commitIndex = new CommitIndex(new File(".gitlet/commit-ids"),
+                    _hash);
+            if (!_commitIndex.exists()) {
+                _commitIndex.addAll(store().ids(ObjectStore.COMMIT));
+            }
+        }
+        return _commitIndex;
+    }
+
+    /** @return the changed-path filters of the commits. */
+    ChangedPaths changedPaths() {
+        if (_changedPaths == null) {
+            _changedPaths = new ChangedPaths(
+                    new File(".gitlet/commit-paths"), _hash);
+        }
+        return _changedPaths;
+    }
+
+    /** @return the commit-graph, building it from the object store if
+     *  it is missing. */
+    CommitGraph commitGraph() {
+        if (_graph == null) {
+            _graph = new CommitGraph(new File(".gitlet/commit-graph"),
+                    _hash);
+            if (!_graph.exists()) {
+                for (String uid : store().ids(ObjectStore.COMMIT)) {
+                    addToGraph(uid);
+                }
             }
         }
-        return (i.containsKey(file) || j.containsKey(file));
+        return _graph;
     }
 
     /**
-     * converts the inputting UID to the respected commit.
-     * @param uid the Universal ID of the commit
-     * @return the respected commit
+     * adds the commit with id UID and all of its ancestors to the
+     * commit-graph, parents first.
+     * @param uid the commit to add
      */
-    public Commit convertUIDToCommit(String uid) {
-        File file = new File(".gitlet/commits/" + uid);
-        if (file.exists()) {
-            return Utils.readObject(file, Commit.class);
-        } else {
-            Utils.message("No commit with that id exists.");
-            throw new GitletException();
+    private void addToGraph(String uid) {
+        ArrayDeque<String> pending = new ArrayDeque<String>();
+        pending.push(uid);
+        while (!pending.isEmpty()) {
+            String top = pending.peek();
+            if (_graph.contains(top)) {
+                pending.pop();
+                continue;
+            }
+            Commit commit = convertUIDToCommit(top);
+            boolean ready = true;
+            if (commit.parents() != null) {
+                for (String parent : commit.parents()) {
+                    if (!_graph.contains(parent)) {
+                        pending.push(parent);
+                        ready = false;
+                    }
+                }
+            }
+            if (ready) {
+                _graph.add(commit);
+                pending.pop();
+            }
+        }
+    }
+
+    /** @return the stat index of the working tree, reading it on first
+     *  use. */
+    StatIndex statIndex() {
+        if (_statIndex == null) {
+            _statIndex = new StatIndex(new File(".gitlet/index"), _hash);
+        }
+        return _statIndex;
+    }
+
+    /** @return the cache of recently used commits, creating it on first
+     *  use. */
+    CommitCache cache() {
+        if (_cache == null) {
+            _cache = new CommitCache();
         }
+        return _cache;
     }
 
     /** @return the head of the branch. */
@@ -686,6 +1459,9 @@ public class Git implements Serializable {
         return _branches.get(_head);
     }
 
+    /** the algorithm that computes the ids of the repository's objects. */
+    private final Hash _hash;
+
     /** stores the branches of the tree. */
     private HashMap<String, String> _branches;
 
@@ -697,4 +1473,28 @@ public class Git implements Serializable {
 
     /** stores the untracked files of the repo. */
     private ArrayList<String> _untrackedFiles;
+
+    /** the file holding the last snapshot of the state. */
+    private File _snapshot;
+
+    /** the changes to the state made since the last snapshot. */
+    private Journal _journal;
+
+    /** the packfile holding all blobs and commits. */
+    private ObjectStore _store;
+
+    /** the most recently used commits, shared by all lookups. */
+    private CommitCache _cache;
+
+    /** the sorted index of all commit ids. */
+    private CommitIndex _commitIndex;
+
+    /** the ancestry of all commits. */
+    private CommitGraph _graph;
+
+    /** the changed-path filters of all commits. */
+    private ChangedPaths _changedPaths;
+
+    /** the cached stat data and hashes of working files. */
+    private StatIndex _statIndex;
 }
@@ -0,0 +1,268 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** The algorithm that computes the ids of a repository's objects, chosen
+ *  when the repository is created and recorded in the file FILE of its
+ *  directory (a repository without one uses SHA-1).  Ids are as long as
+ *  the algorithm's digests, so every id, in hexadecimal or raw, carries
+ *  its length: 20 bytes for "sha1", 32 for "sha256" and 16 for "murmur3",
+ *  the 128-bit MurmurHash3, which is faster than either but is not
+ *  cryptographic and so is only for trusted local repositories.  Every
+ *  record that stores raw ids uses the width of its repository's
+ *  algorithm.  There is no algorithm in use globally: each repository
+ *  reads its own, and passes it to whatever hashes or decodes its ids, so
+ *  that one process may open repositories that use different algorithms.
+ *  @author sky
+ */
+abstract class Hash {
+
+    /** Name of the file in which a repository records its algorithm. */
+    static final String FILE = "hash";
+
+    /** Name of the algorithm of repositories that do not record one. */
+    static final String DEFAULT = "sha1";
+
+    /** @return the algorithm called NAME, or null if there is none.
+     *  @param name "sha1", "sha256" or "murmur3" */
+    static Hash named(String name) {
+        for (Hash hash : ALGORITHMS) {
+            if (hash.name().equals(name)) {
+                return hash;
+            }
+        }
+        return null;
+    }
+
+    /** @return the algorithm recorded in the repository directory DIR, or
+     *  SHA-1 if it records none.
+     *  @param dir a repository's .gitlet directory */
+    static Hash read(File dir) {
+        File file = new File(dir, FILE);
+        if (!file.exists()) {
+            return named(DEFAULT);
+        }
+        String name = new String(Utils.readContents(file),
+                                 StandardCharsets.UTF_8).trim();
+        Hash hash = named(name);
+        if (hash == null) {
+            throw new IllegalArgumentException("unknown hash " + name);
+        }
+        return hash;
+    }
+
+    /** Record this algorithm in the repository directory DIR.
+     *  @param dir a repository's .gitlet directory */
+    void write(File dir) {
+        Utils.writeContents(new File(dir, FILE), name() + "\n");
+    }
+
+    /** @return the number of hexadecimal digits in an id. */
+    int hexLength() {
+        return 2 * bytes();
+    }
+
+    /** @return the name of this algorithm. */
+    abstract String name();
+
+    /** @return the number of bytes in a digest. */
+    abstract int bytes();
+
+    /** @return a new digest computing this algorithm. */
+    abstract MessageDigest digest();
+
+    /** An algorithm provided by java.security. */
+    private static class Standard extends Hash {
+        /** The algorithm known here as NAME and to java.security as
+         *  ALGORITHM, whose digests have BYTES bytes.
+         *  @param name the name recorded in repositories
+         *  @param algorithm the standard name
+         *  @param bytes the digest length */
+        Standard(String name, String algorithm, int bytes) {
+            _name = name;
+            _algorithm = algorithm;
+            _bytes = bytes;
+        }
+
+        @Override
+        String name() {
+            return _name;
+        }
+
+        @Override
+        int bytes() {
+            return _bytes;
+        }
+
+        @Override
+        MessageDigest digest() {
+            try {
+                return MessageDigest.getInstance(_algorithm);
+            } catch (NoSuchAlgorithmException excp) {
+                throw new IllegalArgumentException("System does not support "
+                                                   + _algorithm);
+            }
+        }
+
+        /** The name recorded in repositories. */
+        private final String _name;
+        /** The standard name. */
+        private final String _algorithm;
+        /** The digest length. */
+        private final int _bytes;
+    }
+
+    /** The 128-bit MurmurHash3 (x64 variant, seed 0), giving H1 and then
+     *  H2 as little-endian bytes, as the reference implementation does. */
+    private static class Murmur3 extends Hash {
+        @Override
+        String name() {
+            return "murmur3";
+        }
+
+        @Override
+        int bytes() {
+            return BLOCK;
+        }
+
+        @Override
+        MessageDigest digest() {
+            return new Digest();
+        }
+
+        /** Bytes hashed in each round. */
+        private static final int BLOCK = 16;
+
+        /** First multiplier of each block. */
+        private static final long C1 = 0x87c37b91114253d5L;
+
+        /** Second multiplier of each block. */
+        private static final long C2 = 0x4cf5ad432745937fL;
+
+        /** A streaming MurmurHash3 computation. */
+        private static class Digest extends MessageDigest {
+            /** A digest of no bytes. */
+            Digest() {
+                super("MurmurHash3-128");
+                _block = ByteBuffer.allocate(BLOCK)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            }
+
+            @Override
+            protected int engineGetDigestLength() {
+                return BLOCK;
+            }
+
+            @Override
+            protected void engineUpdate(byte input) {
+                _block.put(input);
+                if (!_block.hasRemaining()) {
+                    mix(_block.getLong(0), _block.getLong(Long.BYTES));
+                    _block.clear();
+                }
+            }
+
+            @Override
+            protected void engineUpdate(byte[] input, int off, int len) {
+                while (len > 0 && _block.position() > 0) {
+                    engineUpdate(input[off]);
+                    off += 1;
+                    len -= 1;
+                }
+                ByteBuffer in = ByteBuffer.wrap(input, off, len)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+                while (in.remaining() >= BLOCK) {
+                    mix(in.getLong(), in.getLong());
+                }
+                _block.put(in);
+            }
+
+            @Override
+            protected byte[] engineDigest() {
+                int tail = _block.position();
+                long k1 = 0, k2 = 0;
+                for (int i = tail - 1; i >= Long.BYTES; i -= 1) {
+                    k2 = (k2 << Byte.SIZE) | (_block.get(i) & UNSIGNED);
+                }
+                for (int i = Math.min(tail, Long.BYTES) - 1; i >= 0; i -= 1) {
+                    k1 = (k1 << Byte.SIZE) | (_block.get(i) & UNSIGNED);
+                }
+                long h1 = _h1, h2 = _h2;
+                if (tail > Long.BYTES) {
+                    h2 ^= Long.rotateLeft(k2 * C2, 33) * C1;
+                }
+                if (tail > 0) {
+                    h1 ^= Long.rotateLeft(k1 * C1, 31) * C2;
+                }
+                long length = _length + tail;
+                h1 ^= length;
+                h2 ^= length;
+                h1 += h2;
+                h2 += h1;
+                h1 = fmix(h1);
+                h2 = fmix(h2);
+                h1 += h2;
+                h2 += h1;
+                byte[] result = ByteBuffer.allocate(BLOCK)
+                    .order(ByteOrder.LITTLE_ENDIAN).putLong(h1).putLong(h2)
+                    .array();
+                engineReset();
+                return result;
+            }
+
+            @Override
+            protected void engineReset() {
+                _h1 = 0;
+                _h2 = 0;
+                _length = 0;
+                _block.clear();
+            }
+
+            /** Fold the block whose halves are K1 and K2 into the state.
+             *  @param k1 the first eight bytes, little-endian
+             *  @param k2 the last eight bytes, little-endian */
+            private void mix(long k1, long k2) {
+                _h1 ^= Long.rotateLeft(k1 * C1, 31) * C2;
+                _h1 = (Long.rotateLeft(_h1, 27) + _h2) * 5 + 0x52dce729;
+                _h2 ^= Long.rotateLeft(k2 * C2, 33) * C1;
+                _h2 = (Long.rotateLeft(_h2, 31) + _h1) * 5 + 0x38495ab5;
+                _length += BLOCK;
+            }
+
+            /** @return K with its bits mixed by the final avalanche.
+             *  @param k a state word */
+            private static long fmix(long k) {
+                k ^= k >>> 33;
+                k *= 0xff51afd7ed558ccdL;
+                k ^= k >>> 33;
+                k *= 0xc4ceb9fe1a85ec53L;
+                k ^= k >>> 33;
+                return k;
+            }
+
+            /** The first state word. */
+            private long _h1;
+            /** The second state word. */
+            private long _h2;
+            /** Bytes folded into the state so far. */
+            private long _length;
+            /** Bytes waiting for a full block. */
+            private final ByteBuffer _block;
+        }
+    }
+
+    /** Mask converting a byte to an unsigned value. */
+    private static final int UNSIGNED = 0xff;
+
+    /** Every algorithm. */
+    private static final Hash[] ALGORITHMS = {
+        new Standard("sha1", "SHA-1", 20),
+        new Standard("sha256", "SHA-256", 32),
+        new Murmur3(),
+    };
+}
@@ -0,0 +1,177 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.regex.Pattern;
+
+/** The patterns of an ignore file, naming working files that gitlet
+ *  should neither report as untracked nor add with a directory.  Each
+ *  line holds one pattern, as in .gitignore: blank lines and lines
+ *  starting with # are skipped, a leading ! re-includes what an earlier
+ *  pattern excluded, a trailing / matches only directories, and a
+ *  pattern with a / elsewhere is matched against the whole path from the
+ *  top of the working tree, while any other pattern is matched against
+ *  the last component of the path.  In a pattern, * and ? match within
+ *  one component, ** matches across components and [...] is a class of
+ *  characters.  The last pattern that matches a path decides it.
+ *
+ *  Each pattern is compiled once: patterns that are plain names or of
+ *  the form *.EXT are tested by comparing strings, and only the others
+ *  as regular expressions.
+ *  @author sky
+ */
+class Ignore {
+
+    /** Kinds of compiled patterns. */
+    private static final int NAME = 0, SUFFIX = 1, REGEX = 2;
+
+    /** The patterns in FILE, which need not exist.
+     *  @param file an ignore file */
+    Ignore(File file) {
+        _rules = new ArrayList<Rule>();
+        if (!file.isFile()) {
+            return;
+        }
+        String text = new String(Utils.readContents(file),
+                                 StandardCharsets.UTF_8);
+        for (String line : text.split("\r?\n")) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            _rules.add(new Rule(line));
+        }
+    }
+
+    /** @return whether the working file or directory PATH is ignored.
+     *  @param path a path relative to the top of the working tree
+     *  @param dir whether PATH is a directory */
+    boolean ignored(String path, boolean dir) {
+        String name = path.substring(path.lastIndexOf(Tree.SEP) + 1);
+        for (int i = _rules.size() - 1; i >= 0; i -= 1) {
+            Rule rule = _rules.get(i);
+            if (rule.matches(path, name, dir)) {
+                return !rule._negated;
+            }
+        }
+        return false;
+    }
+
+    /** One compiled pattern. */
+    private static class Rule {
+        /** The pattern written as LINE.
+         *  @param line a line of an ignore file */
+        Rule(String line) {
+            _negated = line.startsWith("!");
+            if (_negated) {
+                line = line.substring(1);
+            }
+            _dirOnly = line.endsWith("/");
+            if (_dirOnly) {
+                line = line.substring(0, line.length() - 1);
+            }
+            _anchored = line.indexOf(Tree.SEP) >= 0;
+            if (line.startsWith("/")) {
+                line = line.substring(1);
+            }
+            if (!_anchored && !hasWildcard(line)) {
+                _kind = NAME;
+                _text = line;
+                _regex = null;
+            } else if (!_anchored && line.startsWith("*")
+                       && !hasWildcard(line.substring(1))) {
+                _kind = SUFFIX;
+                _text = line.substring(1);
+                _regex = null;
+            } else {
+                _kind = REGEX;
+                _text = line;
+                _regex = Pattern.compile(toRegex(line));
+            }
+        }
+
+        /** @return whether this pattern matches the path PATH, whose last
+         *  component is NAME.
+         *  @param path a path relative to the top of the working tree
+         *  @param name the last component of PATH
+         *  @param dir whether PATH is a directory */
+        boolean matches(String path, String name, boolean dir) {
+            if (_dirOnly && !dir) {
+                return false;
+            }
+            String subject = _anchored ? path : name;
+            switch (_kind) {
+            case NAME:
+                return subject.equals(_text);
+            case SUFFIX:
+                return subject.endsWith(_text);
+            default:
+                return _regex.matcher(subject).matches();
+            }
+        }
+
+        /** Whether a match re-includes the path. */
+        private final boolean _negated;
+        /** Whether only directories match. */
+        private final boolean _dirOnly;
+        /** Whether the pattern is matched against the whole path. */
+        private final boolean _anchored;
+        /** NAME, SUFFIX or REGEX. */
+        private final int _kind;
+        /** The name or suffix matched, or the pattern. */
+        private final String _text;
+        /** The compiled pattern, for REGEX patterns. */
+        private final Pattern _regex;
+    }
+
+    /** @return whether GLOB contains a wildcard.
+     *  @param glob a pattern */
+    private static boolean hasWildcard(String glob) {
+        for (int i = 0; i < glob.length(); i += 1) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '\\') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** @return a regular expression matching what GLOB matches.
+     *  @param glob a pattern */
+    private static String toRegex(String glob) {
+        StringBuilder re = new StringBuilder();
+        for (int i = 0; i < glob.length(); i += 1) {
+            char c = glob.charAt(i);
+            if (glob.startsWith("**/", i)) {
+                re.append("(?:.*/)?");
+                i += 2;
+            } else if (glob.startsWith("**", i)) {
+                re.append(".*");
+                i += 1;
+            } else if (c == '*') {
+                re.append("[^/]*");
+            } else if (c == '?') {
+                re.append("[^/]");
+            } else if (c == '[' && glob.indexOf(']', i + 1) > i + 1) {
+                int end = glob.indexOf(']', i + 1);
+                String set = glob.substring(i + 1, end);
+                if (set.startsWith("!")) {
+                    set = "^" + set.substring(1);
+                }
+                re.append('[').append(set.replace("\\", "\\\\"))
+                    .append(']');
+                i = end;
+            } else if (c == '\\' && i + 1 < glob.length()) {
+                i += 1;
+                re.append(Pattern.quote(String.valueOf(glob.charAt(i))));
+            } else {
+                re.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return re.toString();
+    }
+
+    /** The patterns, in the order written. */
+    private final ArrayList<Rule> _rules;
+}
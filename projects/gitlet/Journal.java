@@ -0,0 +1,127 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A write-ahead log of changes to the repository state, appended to
+ *  instead of rewriting the whole state after every command.  Each
+ *  record is an int byte count followed by an opcode and its operands
+ *  in the Encoder format.  A record cut short by a crash is ignored.
+ *  Every operation sets, deletes or clears entries, so replaying the
+ *  log over a state that already reflects it changes nothing; this lets
+ *  the log be compacted into a snapshot and then truncated without
+ *  care for crashes in between.
+ *  @author sky
+ */
+class Journal {
+
+    /** Point a branch at a commit: NAME, ID. */
+    static final byte SET_BRANCH = 1;
+
+    /** Delete a branch: NAME. */
+    static final byte DELETE_BRANCH = 2;
+
+    /** Make a branch current: NAME. */
+    static final byte SET_HEAD = 3;
+
+    /** Stage a file: PATH, ID. */
+    static final byte STAGE = 4;
+
+    /** Unstage a file: PATH. */
+    static final byte UNSTAGE = 5;
+
+    /** Mark a file for removal: PATH. */
+    static final byte REMOVE = 6;
+
+    /** Unmark a file for removal: PATH. */
+    static final byte UNREMOVE = 7;
+
+    /** Unstage all files. */
+    static final byte CLEAR_STAGED = 8;
+
+    /** Unmark all files for removal. */
+    static final byte CLEAR_REMOVED = 9;
+
+    /** A journal kept in FILE, which need not exist yet.
+     *  @param file the journal file */
+    Journal(File file) {
+        _file = file;
+        _pending = new ByteArrayOutputStream();
+    }
+
+    /** @return the complete records in the journal file, each positioned
+     *  at its opcode. */
+    List<ByteBuffer> records() {
+        ArrayList<ByteBuffer> result = new ArrayList<ByteBuffer>();
+        if (!_file.exists()) {
+            return result;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(Utils.readContents(_file));
+        while (buf.remaining() >= Integer.BYTES) {
+            int len = buf.getInt();
+            if (len <= 0 || len > buf.remaining()) {
+                break;
+            }
+            ByteBuffer rec = buf.slice();
+            rec.limit(len);
+            result.add(rec);
+            buf.position(buf.position() + len);
+        }
+        return result;
+    }
+
+    /** Queue the record whose opcode and operands are in REC.
+     *  @param rec the encoded record */
+    void record(Encoder rec) {
+        byte[] body = rec.toByteArray();
+        _pending.writeBytes(ByteBuffer.allocate(Integer.BYTES)
+                            .putInt(body.length).array());
+        _pending.writeBytes(body);
+    }
+
+    /** @return whether records have been queued since the last flush. */
+    boolean dirty() {
+        return _pending.size() > 0;
+    }
+
+    /** Append all queued records to the journal file in one write. */
+    void flush() {
+        if (!dirty()) {
+            return;
+        }
+        try (FileChannel out = FileChannel.open(_file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            ByteBuffer buf = ByteBuffer.wrap(_pending.toByteArray());
+            while (buf.hasRemaining()) {
+                out.write(buf);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _pending.reset();
+    }
+
+    /** @return the size of the journal file in bytes. */
+    long size() {
+        return _file.length();
+    }
+
+    /** Discard the journal file and any queued records. */
+    void truncate() {
+        _pending.reset();
+        _file.delete();
+    }
+
+    /** The journal file. */
+    private final File _file;
+
+    /** Records not yet written to the file. */
+    private final ByteArrayOutputStream _pending;
+}
@@ -1,6 +1,9 @@
 package gitlet;
 import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author sky
@@ -19,18 +22,19 @@ public class Main {
                 throw new GitletException();
             }
             if (checkCommand(args[0])) {
-                String[] operands = Arrays.copyOfRange(args, 1, args.length);
                 if (checkInit()) {
                     File file =  new File(REPOPATH);
-                    repo = Utils.readObject(file, Git.class);
-                    run(args, operands);
-                    File myRepo = new File(REPOPATH);
-                    Utils.writeObject(myRepo, repo);
+                    repo = Git.load(file, new File(JOURNALPATH));
+                    execute(args);
+                    if (!READ_ONLY.contains(args[0])) {
+                        repo.save();
+                    }
                 } else {
                     if (args[0].equals("init")) {
-                        repo = new Git();
+                        repo = new Git(initHash(Arrays.copyOfRange(args, 1,
+                                args.length)));
                         File myRepo = new File(REPOPATH);
-                        Utils.writeObject(myRepo, repo);
+                        repo.write(myRepo);
                     } else {
                         Utils.message("Not in an initialized "
                                 + "Gitlet directory.");
@@ -42,8 +46,25 @@ public class Main {
                 throw new GitletException();
             }
         } catch (GitletException msg) {
-            System.exit(0);
+            return;
+        }
+    }
+
+    /**
+     * runs one command against the loaded repo, throwing a
+     * GitletException, once its message is printed, if it fails.
+     * @param args the command and its operands
+     */
+    static void execute(String... args) {
+        if (args.length == 0) {
+            Utils.message("Please enter a command.");
+            throw new GitletException();
+        }
+        if (!checkCommand(args[0])) {
+            Utils.message("No command with that name exists.");
+            throw new GitletException();
         }
+        run(args, Arrays.copyOfRange(args, 1, args.length));
     }
 
     /**
@@ -57,39 +78,183 @@ public class Main {
         switch (args[0]) {
         case "init": Utils.message(check);
                 throw new GitletException();
-        case "add": repo.add(command[0]);
+        case "add": operands(command, 1, Integer.MAX_VALUE);
+                repo.add(command);
                 break;
-        case "commit": repo.commit(command[0]);
+        case "commit": operands(command, 1, 1);
+                repo.commit(command[0]);
                 break;
-        case "rm": repo.rm(command[0]);
+        case "rm": operands(command, 1, 1);
+                repo.rm(command[0]);
                 break;
-        case "log": repo.log();
-                break;
-        case "global-log": repo.globalLog();
+        case "log":
+            if (command.length == 0) {
+                repo.log();
+            } else {
+                repo.log(command);
+            }
+            break;
+        case "global-log": operands(command, 0, 0);
+                repo.globalLog();
                 break;
-        case "find": repo.find(command[0]);
+        case "find": operands(command, 1, 1);
+                repo.find(command[0]);
                 break;
-        case "status": repo.status();
+        case "status": operands(command, 0, 0);
+                repo.status();
                 break;
-        case "checkout":
+        case "checkout": operands(command, 1, 3);
             if (command.length != 1) {
                 repo.checkout(command);
             } else {
                 repo.checkout(command[0]);
             }
             break;
-        case "branch": repo.branch(command[0]);
+        case "branch": operands(command, 1, 1);
+                repo.branch(command[0]);
+                break;
+        case "rm-branch": operands(command, 1, 1);
+                repo.rmBranch(command[0]);
+                break;
+        case "reset": operands(command, 1, 1);
+                repo.reset(command[0]);
+                break;
+        case "merge": operands(command, 1, 1);
+                repo.merge(command[0]);
                 break;
-        case "rm-branch": repo.rmBranch(command[0]);
+        case "diff": repo.diff(command);
                 break;
-        case "reset": repo.reset(command[0]);
+        case "gc": repo.gc(command);
                 break;
-        case "merge": repo.merge(command[0]);
+        case "fsck": operands(command, 0, 0);
+                repo.fsck();
                 break;
-        default: Utils.message("no remote yet");
+        case "add-remote": operands(command, 2, 2);
+                repo.addRemote(command[0], command[1]);
+                break;
+        case "rm-remote": operands(command, 1, 1);
+                repo.rmRemote(command[0]);
+                break;
+        case "fetch": operands(command, 2, 2);
+                repo.fetch(command[0], command[1]);
+                break;
+        case "push": operands(command, 2, 2);
+                repo.push(command[0], command[1]);
+                break;
+        case "pull": operands(command, 2, 2);
+                repo.pull(command[0], command[1]);
+                break;
+        case "batch": operands(command, 1, 1);
+            batch(new File(command[0]));
+            break;
+        case "daemon": operands(command, 0, 1);
+            if (command.length == 1) {
+                new Daemon(repo).serve(Paths.get(command[0]));
+            } else {
+                new Daemon(repo).serve(System.in, System.out);
+            }
+            break;
+        default: Utils.message("No command with that name exists.");
         }
     }
 
+    /**
+     * @return the object hash named by the operands COMMAND of init,
+     * which are empty or "--hash" and the name of a Hash.
+     * @param command the operands of init
+     */
+    private static Hash initHash(String[] command) {
+        if (command.length == 0) {
+            return Hash.named(Hash.DEFAULT);
+        }
+        if (command.length != 2 || !command[0].equals("--hash")) {
+            Utils.message("Incorrect operands.");
+            throw new GitletException();
+        }
+        Hash hash = Hash.named(command[1]);
+        if (hash == null) {
+            Utils.message("No such hash: use sha1, sha256 or murmur3.");
+            throw new GitletException();
+        }
+        return hash;
+    }
+
+    /**
+     * checks that there are from MIN to MAX operands in COMMAND, printing
+     * "Incorrect operands." and throwing a GitletException otherwise.
+     * @param command the operands of a command
+     * @param min the fewest operands allowed
+     * @param max the most operands allowed
+     */
+    private static void operands(String[] command, int min, int max) {
+        if (command.length < min || command.length > max) {
+            Utils.message("Incorrect operands.");
+            throw new GitletException();
+        }
+    }
+
+    /**
+     * runs each line of SCRIPT as a command, skipping blank lines and
+     * lines starting with #, and carrying on past any that fail.
+     * @param script file of commands, one per line
+     */
+    private static void batch(File script) {
+        if (!script.isFile()) {
+            Utils.message("No such batch file.");
+            throw new GitletException();
+        }
+        String[] lines = Utils.readContentsAsString(script).split("\r?\n");
+        for (int n = 0; n < lines.length; n += 1) {
+            String[] args = split(lines[n]);
+            if (args.length == 0 || args[0].startsWith("#")) {
+                continue;
+            }
+            try {
+                if (args[0].equals("batch") || args[0].equals("daemon")) {
+                    Utils.message("Cannot run %s from a batch.", args[0]);
+                    throw new GitletException();
+                }
+                execute(args);
+            } catch (GitletException excp) {
+                Utils.message("Line %d failed: %s", n + 1, lines[n]);
+            } catch (RuntimeException excp) {
+                Utils.message("%s", excp.getMessage() != null
+                              ? excp.getMessage() : excp.toString());
+                Utils.message("Line %d failed: %s", n + 1, lines[n]);
+            }
+        }
+    }
+
+    /**
+     * @return the words of LINE, splitting at white space outside
+     * double quotes.
+     * @param line a command line
+     */
+    static String[] split(String line) {
+        ArrayList<String> words = new ArrayList<String>();
+        StringBuilder word = new StringBuilder();
+        boolean quoted = false, inWord = false;
+        for (char c : line.toCharArray()) {
+            if (c == '"') {
+                quoted = !quoted;
+                inWord = true;
+            } else if (!quoted && Character.isWhitespace(c)) {
+                if (inWord) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                    inWord = false;
+                }
+            } else {
+                word.append(c);
+                inWord = true;
+            }
+        }
+        if (inWord) {
+            words.add(word.toString());
+        }
+        return words.toArray(new String[words.size()]);
+    }
+
     /** a list of strings that holds all commands that can be inputted. */
     private static String[] commands = new String[] {
         "init",
@@ -104,9 +269,24 @@ public class Main {
         "branch",
         "rm-branch",
         "reset",
-        "merge"
+        "merge",
+        "daemon",
+        "batch",
+        "diff",
+        "gc",
+        "fsck",
+        "add-remote",
+        "rm-remote",
+        "fetch",
+        "push",
+        "pull"
     };
 
+    /** the commands that only read the repository, after which it is
+     *  not saved, so that they leave every file in .gitlet as it was. */
+    private static final List<String> READ_ONLY = List.of("log",
+        "global-log", "find", "status", "diff", "fsck");
+
     /**
      * @return a boolean to check whether gitlet is initialized
      */
@@ -138,4 +318,7 @@ public class Main {
     /** stores path to our repo. */
     private static final String REPOPATH = ".gitlet/myrepo";
 
+    /** stores path to the journal of changes to our repo. */
+    private static final String JOURNALPATH = ".gitlet/journal";
+
 }
@@ -0,0 +1,180 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/** A diff3-style line merge of two texts descended from a common base.
+ *  The edits turning the base into each side are found with Diff, then
+ *  swept together in base order.  A run of base lines changed by only
+ *  one side takes that side's lines; a run changed by both, where the
+ *  edits overlap or touch, takes their lines if the two sides agree and
+ *  is otherwise written between conflict markers.  Unchanged lines are
+ *  copied from the base.  The result is written as it is produced; only
+ *  the line tables of the inputs and the lists of edits are held.
+ *  @author sky
+ */
+class Merge3 {
+
+    /** Opens the current side of a conflict. */
+    static final String OURS = "<<<<<<< HEAD\n";
+
+    /** Separates the two sides of a conflict. */
+    static final String SEP = "=======\n";
+
+    /** Closes the given side of a conflict. */
+    static final String THEIRS = ">>>>>>>\n";
+
+    /** Write to OUT the merge of OURS and THEIRS, both descended from
+     *  BASE.
+     *  @param base the common ancestor
+     *  @param ours the current version
+     *  @param theirs the given version
+     *  @param out where the merged text goes
+     *  @return whether the merge was free of conflicts */
+    static boolean merge(Diff.Lines base, Diff.Lines ours, Diff.Lines theirs,
+                         OutputStream out) {
+        try {
+            return new Merge3(base, ours, theirs, out).run();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** A merge of OURS and THEIRS from BASE, written to OUT.
+     *  @param base the common ancestor
+     *  @param ours the current version
+     *  @param theirs the given version
+     *  @param out where the merged text goes */
+    private Merge3(Diff.Lines base, Diff.Lines ours, Diff.Lines theirs,
+                   OutputStream out) {
+        _base = base;
+        _ours = ours;
+        _theirs = theirs;
+        _out = out;
+    }
+
+    /** @return whether the merge was clean, having written it. */
+    private boolean run() throws IOException {
+        ArrayList<int[]> mine = edits(_ours), yours = edits(_theirs);
+        boolean clean = true;
+        int i = 0, j = 0, pos = 0, shiftA = 0, shiftB = 0;
+        while (i < mine.size() || j < yours.size()) {
+            boolean fromMine = j == yours.size()
+                || (i < mine.size() && mine.get(i)[0] <= yours.get(j)[0]);
+            int lo = fromMine ? mine.get(i)[0] : yours.get(j)[0];
+            copy(_base, pos, lo);
+            int hi = lo, endA = 0, endB = 0;
+            boolean inA = false, inB = false;
+            while (true) {
+                if (i < mine.size() && mine.get(i)[0] <= hi
+                    && (mine.get(i)[0] < hi || inB || hi == lo)) {
+                    int[] e = mine.get(i++);
+                    hi = Math.max(hi, e[1]);
+                    endA += (e[3] - e[2]) - (e[1] - e[0]);
+                    inA = true;
+                } else if (j < yours.size() && yours.get(j)[0] <= hi
+                           && (yours.get(j)[0] < hi || inA || hi == lo)) {
+                    int[] e = yours.get(j++);
+                    hi = Math.max(hi, e[1]);
+                    endB += (e[3] - e[2]) - (e[1] - e[0]);
+                    inB = true;
+                } else {
+                    break;
+                }
+            }
+            int a0 = lo + shiftA, a1 = hi + shiftA + endA;
+            int b0 = lo + shiftB, b1 = hi + shiftB + endB;
+            if (!inB) {
+                copy(_ours, a0, a1);
+            } else if (!inA) {
+                copy(_theirs, b0, b1);
+            } else if (same(a0, a1, b0, b1)) {
+                copy(_ours, a0, a1);
+            } else {
+                clean = false;
+                print(OURS);
+                copyTerminated(_ours, a0, a1);
+                print(SEP);
+                copyTerminated(_theirs, b0, b1);
+                print(THEIRS);
+            }
+            shiftA += endA;
+            shiftB += endB;
+            pos = hi;
+        }
+        copy(_base, pos, _base.size());
+        _out.flush();
+        return clean;
+    }
+
+    /** @return the edits turning the base into SIDE, each as {base
+     *  start, base end, side start, side end}.
+     *  @param side one of the descendants */
+    private ArrayList<int[]> edits(Diff.Lines side) {
+        ArrayList<int[]> result = new ArrayList<int[]>();
+        Diff.compare(_base, side, (a0, a1, b0, b1) ->
+                     result.add(new int[] {a0, a1, b0, b1}));
+        return result;
+    }
+
+    /** @return whether lines [A0 .. A1) of ours equal lines [B0 .. B1)
+     *  of theirs.
+     *  @param a0 first line of ours
+     *  @param a1 end of the lines of ours
+     *  @param b0 first line of theirs
+     *  @param b1 end of the lines of theirs */
+    private boolean same(int a0, int a1, int b0, int b1) {
+        if (a1 - a0 != b1 - b0) {
+            return false;
+        }
+        for (int k = 0; k < a1 - a0; k += 1) {
+            if (!_ours.same(a0 + k, _theirs, b0 + k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Write lines [LO .. HI) of TEXT.
+     *  @param text the source
+     *  @param lo the first line
+     *  @param hi the end of the lines */
+    private void copy(Diff.Lines text, int lo, int hi) throws IOException {
+        for (int k = lo; k < hi; k += 1) {
+            text.write(k, _out);
+        }
+    }
+
+    /** Write lines [LO .. HI) of TEXT, ending them with a newline so that
+     *  a conflict marker can follow.
+     *  @param text the source
+     *  @param lo the first line
+     *  @param hi the end of the lines */
+    private void copyTerminated(Diff.Lines text, int lo, int hi)
+        throws IOException {
+        copy(text, lo, hi);
+        if (hi > lo && !text.terminated(hi - 1)) {
+            print("\n");
+        }
+    }
+
+    /** Write S.
+     *  @param s the text to write */
+    private void print(String s) throws IOException {
+        _out.write(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** The common ancestor. */
+    private final Diff.Lines _base;
+
+    /** The current version. */
+    private final Diff.Lines _ours;
+
+    /** The given version. */
+    private final Diff.Lines _theirs;
+
+    /** Where the merge goes. */
+    private final OutputStream _out;
+}
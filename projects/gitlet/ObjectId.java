@@ -0,0 +1,188 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+
+/** The id of a stored object, held as raw bits rather than as a
+ *  hexadecimal String, for the tables that keep an entry per object.  An
+ *  id is as long as the digests of the repository's Hash, from 16 to 32
+ *  bytes, and is held as up to four words, the last padded with zero
+ *  bits, together with its length.  An ObjectId takes under half the
+ *  memory of the String, compares and hashes its fields directly, and is
+ *  converted to and from hexadecimal through lookup tables only where an
+ *  id crosses into the rest of gitlet.  Ids order as their hexadecimal
+ *  forms do.
+ *  @author sky
+ */
+final class ObjectId implements Comparable<ObjectId> {
+
+    /** The id of LENGTH bytes whose bits are W0 through W3, in that order.
+     *  @param w0 the first eight bytes
+     *  @param w1 the next eight bytes, or padding
+     *  @param w2 the next eight bytes, or padding
+     *  @param w3 the last eight bytes, or padding
+     *  @param length the number of bytes in the id */
+    private ObjectId(long w0, long w1, long w2, long w3, int length) {
+        _w0 = w0;
+        _w1 = w1;
+        _w2 = w2;
+        _w3 = w3;
+        _length = length;
+    }
+
+    /** @return the id of HASH read from the next HASH.bytes() bytes of
+     *  BUF.
+     *  @param buf holds a raw id
+     *  @param hash the algorithm of the id */
+    static ObjectId read(ByteBuffer buf, Hash hash) {
+        return read(buf, hash.bytes());
+    }
+
+    /** @return the id read from the next LENGTH bytes of BUF.
+     *  @param buf holds a raw id
+     *  @param length the number of bytes in the id */
+    private static ObjectId read(ByteBuffer buf, int length) {
+        if (length <= 0 || length > WORDS * Long.BYTES) {
+            throw new IllegalArgumentException("bad object id length "
+                                               + length);
+        }
+        long[] w = new long[WORDS];
+        for (int i = 0; i < length; i += Long.BYTES) {
+            int n = Math.min(Long.BYTES, length - i);
+            long word = 0;
+            if (n == Long.BYTES) {
+                word = buf.getLong();
+            } else {
+                for (int k = 0; k < n; k += 1) {
+                    word = (word << Byte.SIZE) | (buf.get() & UNSIGNED);
+                }
+            }
+            w[i / Long.BYTES] = word << (Byte.SIZE * (Long.BYTES - n));
+        }
+        return new ObjectId(w[0], w[1], w[2], w[3], length);
+    }
+
+    /** @return the id whose raw bytes are RAW.
+     *  @param raw the bytes of an id */
+    static ObjectId of(byte[] raw) {
+        return read(ByteBuffer.wrap(raw), raw.length);
+    }
+
+    /** @return the id of HASH written as HEX.
+     *  @param hex a full hexadecimal id
+     *  @param hash the algorithm of the id */
+    static ObjectId of(String hex, Hash hash) {
+        int length = hash.bytes();
+        if (hex.length() != hash.hexLength()) {
+            throw new IllegalArgumentException("bad object id " + hex);
+        }
+        long[] w = new long[WORDS];
+        for (int i = 0; i < length; i += Long.BYTES) {
+            int n = Math.min(Long.BYTES, length - i);
+            w[i / Long.BYTES] =
+                hexLong(hex, i, n) << (Byte.SIZE * (Long.BYTES - n));
+        }
+        return new ObjectId(w[0], w[1], w[2], w[3], length);
+    }
+
+    /** @return the number of bytes in this id. */
+    int length() {
+        return _length;
+    }
+
+    /** Write the raw bytes of this id to BUF.
+     *  @param buf receives length() bytes */
+    void write(ByteBuffer buf) {
+        long[] w = { _w0, _w1, _w2, _w3 };
+        for (int i = 0; i < _length; i += Long.BYTES) {
+            long word = w[i / Long.BYTES];
+            int n = Math.min(Long.BYTES, _length - i);
+            if (n == Long.BYTES) {
+                buf.putLong(word);
+            } else {
+                for (int k = 0; k < n; k += 1) {
+                    buf.put((byte) (word >>> (Long.SIZE - Byte.SIZE)));
+                    word <<= Byte.SIZE;
+                }
+            }
+        }
+    }
+
+    /** @return the raw bytes of this id. */
+    byte[] raw() {
+        ByteBuffer buf = ByteBuffer.allocate(_length);
+        write(buf);
+        return buf.array();
+    }
+
+    @Override
+    public String toString() {
+        return Utils.toHex(raw());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return _w0 == other._w0 && _w1 == other._w1 && _w2 == other._w2
+            && _w3 == other._w3 && _length == other._length;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (_w0 >>> Integer.SIZE);
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        int c = Long.compareUnsigned(_w0, other._w0);
+        if (c == 0) {
+            c = Long.compareUnsigned(_w1, other._w1);
+        }
+        if (c == 0) {
+            c = Long.compareUnsigned(_w2, other._w2);
+        }
+        if (c == 0) {
+            c = Long.compareUnsigned(_w3, other._w3);
+        }
+        if (c == 0) {
+            c = Integer.compare(_length, other._length);
+        }
+        return c;
+    }
+
+    /** @return the N bytes written in hexadecimal in HEX starting at
+     *  byte START, as a number.
+     *  @param hex a hexadecimal numeral
+     *  @param start the first byte
+     *  @param n the number of bytes, at most eight */
+    private static long hexLong(String hex, int start, int n) {
+        long result = 0;
+        for (int i = 2 * start; i < 2 * (start + n); i += 1) {
+            result = (result << Utils.HEX_BITS) | Utils.hexDigit(hex, i);
+        }
+        return result;
+    }
+
+    /** Number of words holding the bits of an id. */
+    private static final int WORDS = 4;
+
+    /** Mask converting a byte to an unsigned value. */
+    private static final int UNSIGNED = 0xff;
+
+    /** The first eight bytes. */
+    private final long _w0;
+
+    /** The next eight bytes, or padding. */
+    private final long _w1;
+
+    /** The next eight bytes, or padding. */
+    private final long _w2;
+
+    /** The last eight bytes, or padding. */
+    private final long _w3;
+
+    /** The number of bytes in the id. */
+    private final int _length;
+}
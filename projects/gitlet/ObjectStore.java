@@ -0,0 +1,1083 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** An append-only packfile holding every blob, tree and commit of a
+ *  repository, together with an index from id to the offset of each
+ *  object in the pack.  Objects are never rewritten in place; storing an
+ *  object that is already present is a no-op.  A blob may be stored as a
+ *  Delta against an earlier blob, in which case its DATA is
+ *      BASE ID (ID BYTES)  DEPTH (1 byte)  DELTA
+ *  where DEPTH is the length of the chain of deltas ending in this one.
+ *  Chains are never allowed to grow deeper than the value of the system
+ *  property gitlet.deltaDepth (default DEFAULT_DEPTH), nor deeper than
+ *  MAX_DEPTH, the most that DEPTH can hold.
+ *
+ *  Blobs larger than STREAM_THRESHOLD are never held in memory: they are
+ *  copied between the working tree and the pack in the kernel, through
+ *  FileChannel transfers, and are never delta-compressed.
+ *
+ *  If the system property gitlet.chunkThreshold is set, files larger
+ *  than its value are instead split by a Chunker into chunks, each
+ *  stored once as a CHUNK whose id is the hash of "chunk" and its
+ *  contents, and the blob itself is stored as
+ *  the list of its chunks, as CHUNKED records whose DATA is
+ *      (CHUNK ID (ID BYTES)  LENGTH (int))...
+ *  so that storing a new version of a large file writes only the chunks
+ *  that changed.  Chunked blobs, too, are streamed to the working tree.
+ *
+ *  Blobs, chunks, trees and commits are compressed with the Codec named
+ *  by the system property gitlet.codec (default "deflate") whenever that
+ *  makes them smaller.  The number of the codec is kept in the high bits
+ *  of the record's TYPE byte, zero meaning none, and the DATA of a
+ *  compressed record is
+ *      EXPANDED LENGTH (8 bytes)  COMPRESSED DATA
+ *  Compression happens before the store's lock is taken, expansion and
+ *  delta reconstruction after it is released, and large blobs are
+ *  compressed and expanded as streams.
+ *
+ *  A pack record is laid out as
+ *      TYPE (1 byte)  LENGTH (8 bytes)  ID (ID BYTES)  DATA (LENGTH bytes)
+ *  and an index record as
+ *      ID (ID BYTES)  TYPE (1 byte)  OFFSET of DATA (8 bytes)  LENGTH
+ *  so that the index can always be rebuilt from the pack alone.  ID BYTES
+ *  is the length of the ids of the repository's Hash, which the store
+ *  reads from its directory: 20 for SHA-1.
+ *  @author sky
+ */
+class ObjectStore {
+
+    /** Type tag of a file blob. */
+    static final byte BLOB = 1;
+
+    /** Type tag of an encoded commit. */
+    static final byte COMMIT = 2;
+
+    /** Type tag of a blob stored as a delta against another blob. */
+    static final byte DELTA = 3;
+
+    /** Type tag of a Tree. */
+    static final byte TREE = 4;
+
+    /** Type tag of a blob stored as a list of chunks. */
+    static final byte CHUNKED = 5;
+
+    /** Type tag of one chunk of a chunked blob. */
+    static final byte CHUNK = 6;
+
+    /** Default limit on the length of a chain of deltas. */
+    static final int DEFAULT_DEPTH = 10;
+
+    /** Longest chain of deltas whose length fits in the DEPTH byte. */
+    static final int MAX_DEPTH = Byte.MAX_VALUE;
+
+    /** Size of the largest blob that is read into memory. */
+    static final long STREAM_THRESHOLD = 1L << 24;
+
+    /** Position of the codec number in a TYPE byte. */
+    static final int CODEC_SHIFT = 4;
+
+    /** Mask of the object type in a TYPE byte. */
+    static final int TYPE_MASK = (1 << CODEC_SHIFT) - 1;
+
+    /** Opens (creating if needed) the pack and index stored in the
+     *  directory DIR, whose objects have ids of the Hash it records. */
+    ObjectStore(File dir) {
+        _hash = Hash.read(dir);
+        _idBytes = _hash.bytes();
+        _headerBytes = 1 + Long.BYTES + _idBytes;
+        _indexBytes = _idBytes + 1 + 2 * Long.BYTES;
+        _chunkRefBytes = _idBytes + Integer.BYTES;
+        _packFile = new File(dir, "objects.pack");
+        _indexFile = new File(dir, "objects.idx");
+        _index = new HashMap<ObjectId, Entry>();
+        try {
+            _pack = FileChannel.open(_packFile.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            _idx = FileChannel.open(_indexFile.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            recover(loadIndex());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Read every whole record of the index file into memory, cutting
+     *  off any record left partly written by a crash, so that later
+     *  records are appended in step.
+     *  @return the offset just past the last indexed object in the
+     *  pack */
+    private long loadIndex() throws IOException {
+        long size = _idx.size();
+        ByteBuffer buf = ByteBuffer.allocate((int) size);
+        while (buf.hasRemaining() && _idx.read(buf, buf.position()) >= 0) {
+            continue;
+        }
+        buf.flip();
+        long end = 0;
+        while (buf.remaining() >= _indexBytes) {
+            ObjectId id = ObjectId.read(buf, _hash);
+            byte type = buf.get();
+            long offset = buf.getLong();
+            long length = buf.getLong();
+            _index.put(id, new Entry(type, offset, length));
+            end = Math.max(end, offset + length);
+        }
+        if (buf.position() < size) {
+            _idx.truncate(buf.position());
+        }
+        return end;
+    }
+
+    /** Index, in memory and on disk, every whole record of the pack that
+     *  begins at or after FROM, which is the end of the last indexed
+     *  record, and cut off any record left partly written by a crash.
+     *  With an empty index this rebuilds it from the pack alone.
+     *  @param from the offset of the first record that may be unindexed */
+    private void recover(long from) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(_headerBytes);
+        long size = _pack.size();
+        long pos = from;
+        while (pos + _headerBytes <= size) {
+            head.clear();
+            while (head.hasRemaining()
+                   && _pack.read(head, pos + head.position()) >= 0) {
+                continue;
+            }
+            head.flip();
+            byte type = head.get();
+            long length = head.getLong();
+            ObjectId id = ObjectId.read(head, _hash);
+            if (length < 0 || pos + _headerBytes + length > size) {
+                break;
+            }
+            if (!_index.containsKey(id)) {
+                index(id, type, pos + _headerBytes, length);
+            }
+            pos += _headerBytes + length;
+        }
+        if (pos < size) {
+            _pack.truncate(pos);
+        }
+    }
+
+    /** @return the algorithm that computes the ids of this store's
+     *  objects. */
+    Hash hash() {
+        return _hash;
+    }
+
+    /** @return whether an object with id ID is stored.
+     *  @param id the hash of the object */
+    synchronized boolean contains(String id) {
+        return _index.containsKey(ObjectId.of(id, _hash));
+    }
+
+    /** @return the location of the object with id ID, or null if it is
+     *  absent.
+     *  @param id the hash of the object */
+    private Entry entry(String id) {
+        return _index.get(ObjectId.of(id, _hash));
+    }
+
+    /** Store DATA as an object of type TYPE with id ID, unless such an
+     *  object is already present, compressing it if that is worthwhile.
+     *  @param type the object type
+     *  @param id the hash of the object
+     *  @param data the contents of the object */
+    void put(byte type, String id, byte[] data) {
+        if (contains(id)) {
+            return;
+        }
+        if (_codec.id() != Codec.NONE && type != DELTA && type != CHUNKED) {
+            byte[] packed = _codec.encode(data);
+            if (Long.BYTES + packed.length < data.length) {
+                ByteBuffer rec = ByteBuffer.allocate(Long.BYTES
+                                                     + packed.length);
+                rec.putLong(data.length).put(packed);
+                append(tag(type, _codec), id, rec.array());
+                return;
+            }
+        }
+        append(type, id, data);
+    }
+
+    /** @return the TYPE byte of an object of type TYPE compressed with
+     *  CODEC.
+     *  @param type the object type
+     *  @param codec the codec used */
+    private static byte tag(byte type, Codec codec) {
+        return (byte) (type | codec.id() << CODEC_SHIFT);
+    }
+
+    /** Append DATA to the pack as the object with id ID and TYPE byte
+     *  TAG, unless such an object is already present.
+     *  @param tag the object type and codec
+     *  @param id the hash of the object
+     *  @param data the stored bytes of the object */
+    private synchronized void append(byte tag, String id, byte[] data) {
+        ObjectId key = ObjectId.of(id, _hash);
+        if (_index.containsKey(key)) {
+            return;
+        }
+        try {
+            long start = _pack.size();
+            ByteBuffer rec = ByteBuffer.allocate(_headerBytes + data.length);
+            rec.put(tag).putLong(data.length);
+            key.write(rec);
+            rec.put(data);
+            rec.flip();
+            writeFully(_pack, rec, start);
+            index(key, tag, start + _headerBytes, data.length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Store the contents of FILE as the blob with id ID.  Small files
+     *  are stored as by putBlob; files above the chunking threshold are
+     *  chunked, and any others streamed into the pack.
+     *  @param id the hash of the contents of FILE
+     *  @param file a plain file
+     *  @param base the id of a prior version of the same file, or null */
+    void putFile(String id, File file, String base) {
+        if (contains(id)) {
+            return;
+        }
+        long size = file.length();
+        if (size > _chunkThreshold) {
+            putChunked(id, file);
+        } else if (size <= STREAM_THRESHOLD) {
+            putBlob(id, Utils.readContents(file), base);
+        } else {
+            streamFile(id, file, size);
+        }
+    }
+
+    /** Store the contents of FILE as the chunked blob with id ID, adding
+     *  only the chunks not already present.
+     *  @param id the hash of the contents of FILE
+     *  @param file a plain file */
+    private void putChunked(String id, File file) {
+        Encoder list = new Encoder();
+        Chunker.split(file, (buf, off, len) -> {
+            byte[] data = Arrays.copyOfRange(buf, off, off + len);
+            String chunk = Utils.hash(_hash, "chunk", data);
+            put(CHUNK, chunk, data);
+            list.putId(chunk).putInt(len);
+        });
+        put(CHUNKED, id, list.toByteArray());
+    }
+
+    /** Stream the SIZE bytes of FILE into the pack as the blob with id
+     *  ID.  The file is first compressed into a temporary file beside the
+     *  pack, which is stored instead if it is smaller.
+     *  @param id the hash of the contents of FILE
+     *  @param file a plain file
+     *  @param size the length of FILE */
+    private void streamFile(String id, File file, long size) {
+        if (_codec.id() == Codec.NONE) {
+            appendFile(BLOB, id, file, size);
+            return;
+        }
+        File packed = new File(_packFile.getParentFile(),
+                               "stream-" + id + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(packed.toPath());
+                 InputStream in = Files.newInputStream(file.toPath())) {
+                out.write(ByteBuffer.allocate(Long.BYTES).putLong(size)
+                          .array());
+                try (OutputStream data = _codec.compress(out)) {
+                    in.transferTo(data);
+                }
+            }
+            if (packed.length() < size) {
+                appendFile(tag(BLOB, _codec), id, packed, packed.length());
+            } else {
+                appendFile(BLOB, id, file, size);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            packed.delete();
+        }
+    }
+
+    /** Append the SIZE bytes of FILE to the pack as the object with id ID
+     *  and TYPE byte TAG.
+     *  @param tag the object type and codec
+     *  @param id the hash of the object
+     *  @param file the stored bytes of the object
+     *  @param size the length of FILE */
+    private synchronized void appendFile(byte tag, String id, File file,
+                                         long size) {
+        ObjectId key = ObjectId.of(id, _hash);
+        if (_index.containsKey(key)) {
+            return;
+        }
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                                               StandardOpenOption.READ)) {
+            long start = _pack.size();
+            ByteBuffer head = ByteBuffer.allocate(_headerBytes);
+            head.put(tag).putLong(size);
+            key.write(head);
+            head.flip();
+            writeFully(_pack, head, start);
+            long offset = start + _headerBytes;
+            for (long done = 0; done < size;) {
+                long n = _pack.transferFrom(in, offset + done, size - done);
+                if (n <= 0) {
+                    throw new IllegalArgumentException("file changed: "
+                                                       + file);
+                }
+                done += n;
+            }
+            index(key, tag, offset, size);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Overwrite FILE with the contents of the blob with id ID, streaming
+     *  it, or each of its chunks, out of the pack unless it is stored as
+     *  a delta.  The store's lock is held only to find the blob, so
+     *  several files may be streamed at once.
+     *  @param id the hash of the blob
+     *  @param file the file to write */
+    void copyTo(String id, File file) {
+        ArrayList<Entry> parts = new ArrayList<Entry>();
+        Entry e;
+        synchronized (this) {
+            e = entry(id);
+            if (e != null && e.type == CHUNKED) {
+                for (String chunk : chunks(id)) {
+                    Entry c = entry(chunk);
+                    if (c == null) {
+                        throw new IllegalArgumentException("missing object "
+                                                           + chunk);
+                    }
+                    parts.add(c);
+                }
+            }
+        }
+        if (e == null) {
+            throw new IllegalArgumentException("missing object " + id);
+        }
+        if (e.type == BLOB) {
+            parts.add(e);
+        }
+        try (FileChannel out = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (e.type == DELTA) {
+                writeFully(out, ByteBuffer.wrap(get(id)), 0);
+                return;
+            }
+            for (Entry part : parts) {
+                copyPart(part, out);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Append the contents of the stored blob or chunk E to OUT, in the
+     *  kernel if it is not compressed and otherwise through its codec.
+     *  @param e the location of a blob or chunk
+     *  @param out the file being written */
+    private void copyPart(Entry e, FileChannel out) throws IOException {
+        if (e.codec != Codec.NONE) {
+            try (InputStream in = Codec.get(e.codec).decompress(
+                     new PackInput(e.offset + Long.BYTES,
+                                   e.offset + e.length))) {
+                byte[] buf = new byte[Codec.BUFFER];
+                for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                    writeFully(out, ByteBuffer.wrap(buf, 0, n),
+                               out.position());
+                    out.position(out.position() + n);
+                }
+            }
+            return;
+        }
+        for (long done = 0; done < e.length;) {
+            long n = _pack.transferTo(e.offset + done, e.length - done, out);
+            if (n <= 0) {
+                throw new IllegalArgumentException("truncated pack");
+            }
+            done += n;
+        }
+    }
+
+    /** Record that the object with id ID and TYPE byte TAG occupies the
+     *  LENGTH bytes of the pack starting at OFFSET.
+     *  @param id the hash of the object
+     *  @param tag the object type and codec
+     *  @param offset the start of the object's data
+     *  @param length the size of the object's data */
+    private void index(ObjectId id, byte tag, long offset, long length)
+        throws IOException {
+        ByteBuffer ent = ByteBuffer.allocate(_indexBytes);
+        id.write(ent);
+        ent.put(tag).putLong(offset).putLong(length);
+        ent.flip();
+        writeFully(_idx, ent, _idx.size());
+        _index.put(id, new Entry(tag, offset, length));
+    }
+
+    /** Store DATA as the blob with id ID, as a delta against the blob
+     *  with id BASE when that is worthwhile.  BASE may be null.  The
+     *  delta is computed without holding the store's lock, so several
+     *  threads may store blobs at once.
+     *  @param id the hash of DATA
+     *  @param data the contents of the blob
+     *  @param base the id of a prior version of the same file */
+    void putBlob(String id, byte[] data, String base) {
+        if (contains(id)) {
+            return;
+        }
+        int depth = base == null ? -1 : depth(base);
+        if (depth < 0 || depth >= _maxDepth) {
+            put(BLOB, id, data);
+            return;
+        }
+        byte[] delta = Delta.create(get(base), data);
+        if (delta.length >= data.length / 2) {
+            put(BLOB, id, data);
+            return;
+        }
+        ByteBuffer rec = ByteBuffer.allocate(_idBytes + 1 + delta.length);
+        rec.put(Utils.fromHex(base)).put((byte) (depth + 1)).put(delta);
+        put(DELTA, id, rec.array());
+    }
+
+    /** @return whether the blob ID should be streamed by copyTo rather
+     *  than read into memory: it is chunked or too large to read.
+     *  @param id the hash of a blob */
+    synchronized boolean streamed(String id) {
+        Entry e = entry(id);
+        if (e == null) {
+            throw new IllegalArgumentException("missing object " + id);
+        }
+        return e.type == CHUNKED
+            || (e.type == BLOB && expanded(e) > STREAM_THRESHOLD);
+    }
+
+    /** @return the ids of the chunks of the blob ID, in order, or null if
+     *  it is not stored in chunks.
+     *  @param id the hash of a stored object */
+    List<String> chunks(String id) {
+        Record r = record(id);
+        if (r == null || r.entry.type != CHUNKED) {
+            return null;
+        }
+        ByteBuffer list = ByteBuffer.wrap(expand(r));
+        ArrayList<String> result = new ArrayList<String>();
+        while (list.remaining() >= _chunkRefBytes) {
+            result.add(Encoder.getId(list, _hash));
+            list.getInt();
+        }
+        return result;
+    }
+
+    /** @return the contents of the object with id ID, or null if there
+     *  is no such object.  Blobs stored as deltas are reconstructed.  The
+     *  store's lock is held only to find each object, so several threads
+     *  may expand objects at once.
+     *  @param id the hash of the object */
+    byte[] get(String id) {
+        Record r = record(id);
+        return r == null ? null : contents(r);
+    }
+
+    /** @return the contents of the object R, joining its chunks or
+     *  applying its delta to its base as needed.
+     *  @param r a stored object */
+    private byte[] contents(Record r) {
+        byte[] data = expand(r);
+        if (r.entry.type == CHUNKED) {
+            return unchunk(data);
+        } else if (r.entry.type != DELTA) {
+            return data;
+        }
+        String base = Utils.toHex(Arrays.copyOf(data, _idBytes));
+        byte[] delta = Arrays.copyOfRange(data, _idBytes + 1, data.length);
+        return Delta.apply(get(base), delta);
+    }
+
+    /** @return the contents of the chunked blob whose list of chunks is
+     *  LIST.
+     *  @param list the DATA of a CHUNKED record */
+    private byte[] unchunk(byte[] list) {
+        ByteBuffer refs = ByteBuffer.wrap(list);
+        long total = 0;
+        for (int i = _idBytes; i < list.length; i += _chunkRefBytes) {
+            total += refs.getInt(i);
+        }
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("object too large to read");
+        }
+        ByteBuffer result = ByteBuffer.allocate((int) total);
+        while (refs.remaining() >= _chunkRefBytes) {
+            String chunk = Encoder.getId(refs, _hash);
+            refs.getInt();
+            Record c = record(chunk);
+            if (c == null) {
+                throw new IllegalArgumentException("missing object "
+                                                   + chunk);
+            }
+            result.put(expand(c));
+        }
+        return result.array();
+    }
+
+    /** @return a read-only buffer over the contents of the object with
+     *  id ID, or null if there is no such object.  Where possible this is
+     *  a view of the mapped pack rather than a copy.
+     *  @param id the hash of the object */
+    ByteBuffer buffer(String id) {
+        Record r = record(id);
+        if (r == null) {
+            return null;
+        }
+        Entry e = r.entry;
+        if (e.type != DELTA && e.type != CHUNKED && e.codec == Codec.NONE) {
+            return r.data;
+        }
+        return ByteBuffer.wrap(contents(r)).asReadOnlyBuffer();
+    }
+
+    /** @return the length of the delta chain ending at the blob with id
+     *  ID, or -1 if there is no such blob.
+     *  @param id the hash of the blob */
+    private int depth(String id) {
+        Record r = record(id);
+        if (r == null || (r.entry.type != BLOB && r.entry.type != DELTA)) {
+            return -1;
+        } else if (r.entry.type == BLOB) {
+            return 0;
+        }
+        return expand(r)[_idBytes];
+    }
+
+    /** @return the object with id ID together with a read-only view of
+     *  its stored bytes, or null if it is absent.  The view is a slice of
+     *  the mapped pack, which stays valid once the lock is released, or a
+     *  copy if the pack is too large to map.
+     *  @param id the hash of the object */
+    private synchronized Record record(String id) {
+        Entry e = entry(id);
+        if (e == null) {
+            return null;
+        }
+        ByteBuffer view = mapped(e.offset + e.length);
+        if (view == null) {
+            view = ByteBuffer.wrap(stored(e));
+        } else {
+            view.position((int) e.offset);
+            view.limit((int) (e.offset + e.length));
+            view = view.slice();
+        }
+        return new Record(e, view.asReadOnlyBuffer());
+    }
+
+    /** @return the DATA of the object R, expanded if it is compressed.
+     *  @param r a stored object */
+    private static byte[] expand(Record r) {
+        ByteBuffer data = r.data.duplicate();
+        if (r.entry.codec == Codec.NONE) {
+            byte[] result = new byte[data.remaining()];
+            data.get(result);
+            return result;
+        }
+        long length = data.getLong();
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("object too large to read");
+        }
+        return Codec.get(r.entry.codec).decode(new BufferInput(data),
+                                               (int) length);
+    }
+
+    /** @return the size of the DATA of the object located by E once
+     *  expanded.
+     *  @param e the location of the object */
+    private long expanded(Entry e) {
+        if (e.codec == Codec.NONE) {
+            return e.length;
+        }
+        ByteBuffer len = ByteBuffer.allocate(Long.BYTES);
+        try {
+            while (len.hasRemaining()
+                   && _pack.read(len, e.offset + len.position()) >= 0) {
+                continue;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return len.getLong(0);
+    }
+
+    /** @return the stored bytes of the object located by E, read from
+     *  the pack file.
+     *  @param e the location of the object */
+    private byte[] stored(Entry e) {
+        if (e.length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("object too large to read");
+        }
+        byte[] result = new byte[(int) e.length];
+        ByteBuffer buf = ByteBuffer.wrap(result);
+        try {
+            while (buf.hasRemaining()) {
+                int n = _pack.read(buf, e.offset + buf.position());
+                if (n < 0) {
+                    throw new IllegalArgumentException("truncated pack");
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result;
+    }
+
+    /** @return the type of the object with id ID, or 0 if it is absent.
+     *  @param id the hash of the object */
+    synchronized byte type(String id) {
+        Entry e = entry(id);
+        if (e == null) {
+            return 0;
+        }
+        return e.type == DELTA || e.type == CHUNKED ? BLOB : e.type;
+    }
+
+    /** @return the ids of all stored objects of type TYPE.
+     *  @param type BLOB or COMMIT */
+    synchronized List<String> ids(byte type) {
+        ArrayList<String> result = new ArrayList<String>();
+        for (Map.Entry<ObjectId, Entry> e : _index.entrySet()) {
+            byte t = e.getValue().type;
+            if (t == type
+                || (type == BLOB && (t == DELTA || t == CHUNKED))) {
+                result.add(e.getKey().toString());
+            }
+        }
+        return result;
+    }
+
+    /** @return the ids of all stored objects. */
+    synchronized List<String> ids() {
+        ArrayList<String> result = new ArrayList<String>(_index.size());
+        for (ObjectId id : _index.keySet()) {
+            result.add(id.toString());
+        }
+        return result;
+    }
+
+    /** @return the id of the blob that the blob ID is stored as a delta
+     *  against, or null if it is stored whole.
+     *  @param id the hash of a stored object */
+    synchronized String deltaBase(String id) {
+        Entry e = entry(id);
+        if (e == null || e.type != DELTA) {
+            return null;
+        }
+        ByteBuffer rec = ByteBuffer.allocate(_idBytes);
+        try {
+            while (rec.hasRemaining()
+                   && _pack.read(rec, e.offset + rec.position()) >= 0) {
+                continue;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return Utils.toHex(rec.array());
+    }
+
+    /** @return the combined size in bytes of the pack and its index. */
+    synchronized long size() {
+        return _packFile.length() + _indexFile.length();
+    }
+
+    /** Replace the pack and index with ones holding only the objects
+     *  whose ids are in KEEP, commits first, then trees, then blobs,
+     *  each group in its old order.  The caller must keep the base of
+     *  every kept delta.  Records are copied in the kernel, without being
+     *  decoded.  The old index is removed before the new pack is moved
+     *  into place, so that a crash part way leaves a pack whose index is
+     *  rebuilt when next opened.
+     *  @param keep the ids of the objects to keep */
+    synchronized void repack(Set<String> keep) {
+        ArrayList<ObjectId> order = new ArrayList<ObjectId>();
+        for (String id : keep) {
+            ObjectId key = ObjectId.of(id, _hash);
+            if (_index.containsKey(key)) {
+                order.add(key);
+            }
+        }
+        order.sort(Comparator.comparingInt((ObjectId id) ->
+                                           rank(_index.get(id).type))
+                   .thenComparingLong(id -> _index.get(id).offset));
+        File packTmp = new File(_packFile.getPath() + ".tmp");
+        File idxTmp = new File(_indexFile.getPath() + ".tmp");
+        HashMap<ObjectId, Entry> moved = new HashMap<ObjectId, Entry>();
+        try {
+            try (FileChannel pack = FileChannel.open(packTmp.toPath(),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING);
+                 FileChannel idx = FileChannel.open(idxTmp.toPath(),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+                long pos = 0;
+                ByteBuffer rec = ByteBuffer.allocate(_indexBytes);
+                for (ObjectId id : order) {
+                    Entry e = _index.get(id);
+                    long start = e.offset - _headerBytes;
+                    long len = _headerBytes + e.length;
+                    for (long done = 0; done < len;) {
+                        long n = _pack.transferTo(start + done, len - done,
+                                                  pack);
+                        if (n <= 0) {
+                            throw new IllegalArgumentException(
+                                "truncated pack");
+                        }
+                        done += n;
+                    }
+                    Entry m = new Entry(e.tag(), pos + _headerBytes,
+                                        e.length);
+                    moved.put(id, m);
+                    rec.clear();
+                    id.write(rec);
+                    rec.put(m.tag()).putLong(m.offset).putLong(m.length);
+                    rec.flip();
+                    idx.write(rec);
+                    pos += len;
+                }
+                pack.force(true);
+                idx.force(true);
+            }
+            _pack.close();
+            _idx.close();
+            _map = null;
+            Files.delete(_indexFile.toPath());
+            Files.move(packTmp.toPath(), _packFile.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            Files.move(idxTmp.toPath(), _indexFile.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            _pack = FileChannel.open(_packFile.toPath(),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            _idx = FileChannel.open(_indexFile.toPath(),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _index.clear();
+        _index.putAll(moved);
+    }
+
+    /** Write the records of the objects IDS, as they appear in the pack,
+     *  to the file OUT, replacing it.
+     *  @param ids the ids of stored objects
+     *  @param out the file to write
+     *  @return the number of bytes written */
+    synchronized long exportPack(List<String> ids, File out) {
+        long pos = 0;
+        try (FileChannel dest = FileChannel.open(out.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (String id : ids) {
+                Entry e = entry(id);
+                if (e == null) {
+                    throw new IllegalArgumentException("missing object "
+                                                       + id);
+                }
+                long len = _headerBytes + e.length;
+                for (long done = 0; done < len;) {
+                    long n = _pack.transferTo(e.offset - _headerBytes + done,
+                                              len - done, dest);
+                    if (n <= 0) {
+                        throw new IllegalArgumentException("truncated pack");
+                    }
+                    done += n;
+                }
+                pos += len;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return pos;
+    }
+
+    /** Append to this store every record in the pack stream IN, as
+     *  written by exportPack, whose object is not already present.
+     *  @param in a file of pack records
+     *  @return the number of objects added */
+    synchronized int importPack(File in) {
+        int added = 0;
+        try (FileChannel src = FileChannel.open(in.toPath(),
+                                                StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(_headerBytes);
+            long size = src.size();
+            for (long pos = 0; pos < size;) {
+                head.clear();
+                while (head.hasRemaining()
+                       && src.read(head, pos + head.position()) > 0) {
+                    continue;
+                }
+                if (head.hasRemaining()) {
+                    throw new IllegalArgumentException("truncated stream");
+                }
+                head.flip();
+                byte type = head.get();
+                long length = head.getLong();
+                ObjectId id = ObjectId.read(head, _hash);
+                long len = _headerBytes + length;
+                if (!_index.containsKey(id)) {
+                    long start = _pack.size();
+                    src.position(pos);
+                    for (long done = 0; done < len;) {
+                        long n = _pack.transferFrom(src, start + done,
+                                                    len - done);
+                        if (n <= 0) {
+                            throw new IllegalArgumentException(
+                                "truncated stream");
+                        }
+                        done += n;
+                    }
+                    index(id, type, start + _headerBytes, length);
+                    added += 1;
+                }
+                pos += len;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return added;
+    }
+
+    /** @return the position of objects of type TYPE in a repacked pack.
+     *  @param type the type of an object */
+    private static int rank(byte type) {
+        switch (type) {
+        case COMMIT:
+            return 0;
+        case TREE:
+            return 1;
+        default:
+            return 2;
+        }
+    }
+
+    /** Release the files held open by this store. */
+    synchronized void close() {
+        try {
+            _pack.close();
+            _idx.close();
+            _map = null;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** @return a private view of the pack mapped into memory and covering
+     *  at least the first END bytes, or null if the pack is too large to
+     *  map as a single buffer.
+     *  @param end the first offset that must be mapped */
+    private ByteBuffer mapped(long end) {
+        if (_map == null || _map.capacity() < end) {
+            try {
+                long size = _pack.size();
+                if (size > Integer.MAX_VALUE) {
+                    return null;
+                }
+                _map = _pack.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return _map.duplicate();
+    }
+
+    /** Write all of BUF to CHANNEL starting at POSITION.
+     *  @param channel the file to write
+     *  @param buf the bytes to write
+     *  @param position the offset in CHANNEL */
+    static void writeFully(FileChannel channel, ByteBuffer buf,
+                           long position) throws IOException {
+        while (buf.hasRemaining()) {
+            position += channel.write(buf, position);
+        }
+    }
+
+    /** Reads the bytes of the pack between two offsets, without moving
+     *  the pack's position, so that several may be read at once. */
+    private class PackInput extends InputStream {
+        /** A stream of the pack from START up to END.
+         *  @param start the offset of the first byte read
+         *  @param end the offset just past the last byte read */
+        PackInput(long start, long end) {
+            _pos = start;
+            _end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & UNSIGNED;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            if (_pos >= _end) {
+                return -1;
+            }
+            int want = (int) Math.min(len, _end - _pos);
+            int n = _pack.read(ByteBuffer.wrap(buf, off, want), _pos);
+            if (n < 0) {
+                throw new IllegalArgumentException("truncated pack");
+            }
+            _pos += n;
+            return n;
+        }
+
+        /** Offset of the next byte read. */
+        private long _pos;
+        /** Offset just past the last byte read. */
+        private final long _end;
+    }
+
+    /** Reads the remaining bytes of a buffer. */
+    private static class BufferInput extends InputStream {
+        /** A stream of the remaining bytes of BUF.
+         *  @param buf the bytes to read */
+        BufferInput(ByteBuffer buf) {
+            _buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return _buf.hasRemaining() ? _buf.get() & UNSIGNED : -1;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) {
+            if (!_buf.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, _buf.remaining());
+            _buf.get(buf, off, n);
+            return n;
+        }
+
+        /** The bytes not yet read. */
+        private final ByteBuffer _buf;
+    }
+
+    /** Mask converting a byte to an unsigned value. */
+    private static final int UNSIGNED = 0xff;
+
+    /** An object found in the store, with its stored bytes. */
+    private static class Record {
+        /** The object located by ENTRY, whose stored bytes are DATA.
+         *  @param entry the location of the object
+         *  @param data a read-only view of its stored bytes */
+        Record(Entry entry, ByteBuffer data) {
+            this.entry = entry;
+            this.data = data;
+        }
+
+        /** The location of the object. */
+        private final Entry entry;
+        /** A read-only view of the object's stored bytes. */
+        private final ByteBuffer data;
+    }
+
+    /** Location of one object in the pack. */
+    private static class Entry {
+        /** An object whose TYPE byte is TAG and whose LENGTH bytes begin
+         *  at OFFSET. */
+        Entry(byte tag, long offset, long length) {
+            this.type = (byte) (tag & TYPE_MASK);
+            this.codec = (tag & UNSIGNED) >>> CODEC_SHIFT;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /** @return the TYPE byte of the object. */
+        byte tag() {
+            return (byte) (type | codec << CODEC_SHIFT);
+        }
+
+        /** The object type. */
+        private final byte type;
+        /** The number of the codec that compressed the object. */
+        private final int codec;
+        /** Offset of the object's data in the pack. */
+        private final long offset;
+        /** Length of the object's data. */
+        private final long length;
+    }
+
+    /** The pack file. */
+    private final File _packFile;
+
+    /** The index file. */
+    private final File _indexFile;
+
+    /** Open channel on the pack. */
+    private FileChannel _pack;
+
+    /** Open channel on the index. */
+    private FileChannel _idx;
+
+    /** The pack mapped read-only, or null if not yet mapped. */
+    private MappedByteBuffer _map;
+
+    /** Longest chain of deltas that may be created. */
+    private final int _maxDepth = Math.min(MAX_DEPTH,
+        Integer.getInteger("gitlet.deltaDepth", DEFAULT_DEPTH));
+
+    /** Codec used to compress new objects. */
+    private final Codec _codec =
+        Codec.named(System.getProperty("gitlet.codec", "deflate"));
+
+    /** Size above which files are stored in chunks; by default none are. */
+    private final long _chunkThreshold =
+        Long.getLong("gitlet.chunkThreshold", Long.MAX_VALUE);
+
+    /** The algorithm that computes the ids of the stored objects. */
+    private final Hash _hash;
+
+    /** Number of bytes in a raw object id, as set by the repository's
+     *  Hash. */
+    private final int _idBytes;
+
+    /** Size of the header preceding the data of each pack record. */
+    private final int _headerBytes;
+
+    /** Size of one index record. */
+    private final int _indexBytes;
+
+    /** Size of one entry in the DATA of a CHUNKED record. */
+    private final int _chunkRefBytes;
+
+    /** Maps object ids to their locations in the pack. */
+    private final HashMap<ObjectId, Entry> _index;
+}
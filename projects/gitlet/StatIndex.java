@@ -0,0 +1,241 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** A cache of the blob id of each working file, keyed by path and
+ *  validated by the file's modification time, size and inode, so that
+ *  unchanged files need not be read to learn whether they differ from
+ *  a commit.  The cache is saved in .gitlet/index as
+ *      MAGIC (int)  VERSION (1 byte)  COUNT (int)
+ *      (PATH  MTIME (long)  SIZE (long)  INODE (long)  ID)...
+ *  As in git, the index's own modification time is its timestamp, on the
+ *  same clock and with the same granularity as the files'.  An entry is
+ *  trusted only if its file was last modified before the timestamp:
+ *  a file modified at or after it is "racy", since a later change in
+ *  the same clock tick would leave its stat data unchanged, and is
+ *  hashed again on every use.  Racy entries are dropped when the index
+ *  is read and left out when it is written, so that they never become
+ *  trusted without being hashed again.
+ *  @author sky
+ */
+class StatIndex {
+
+    /** Identifies an index file. */
+    static final int MAGIC = 0x69647831;
+
+    /** Version of the index file format. */
+    static final int FORMAT = 1;
+
+    /** An index stored in FILE, which need not exist yet, of files whose
+     *  ids are computed by HASH.
+     *  @param file the index file
+     *  @param hash the algorithm of the repository's ids */
+    StatIndex(File file, Hash hash) {
+        _file = file;
+        _hash = hash;
+        _entries = new HashMap<String, Entry>();
+        if (!file.exists()) {
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(Utils.readContents(file));
+        if (buf.remaining() < Integer.BYTES + 1 + Integer.BYTES
+            || buf.getInt() != MAGIC || buf.get() != FORMAT) {
+            return;
+        }
+        _stamp = mtime(file);
+        for (int n = buf.getInt(); n > 0; n -= 1) {
+            String path = Encoder.getString(buf);
+            long mtime = buf.getLong(), size = buf.getLong();
+            long inode = buf.getLong();
+            String id = Encoder.getId(buf, hash);
+            if (mtime < _stamp) {
+                _entries.put(path, new Entry(mtime, size, inode, id));
+            }
+        }
+    }
+
+    /** @return the blob id of the contents of the working file FILE,
+     *  known as PATH, reading the file only if its stat data has changed
+     *  since it was last hashed or it is racy.  Files are hashed outside
+     *  the index's lock, so several threads may call this at once.
+     *  @param path the repository path of the file
+     *  @param file the working file */
+    String hash(String path, File file) {
+        Entry stat = stat(file);
+        Entry old;
+        long stamp;
+        synchronized (this) {
+            old = _entries.get(path);
+            stamp = _stamp;
+        }
+        if (old != null && stat != null && old.sameStat(stat)
+            && old.mtime < stamp) {
+            return old.id;
+        }
+        String id = Utils.hash(_hash, file);
+        synchronized (this) {
+            remember(path, stat, id);
+        }
+        return id;
+    }
+
+    /** Record that the working file FILE, known as PATH, has just been
+     *  written with the contents of blob ID.
+     *  @param path the repository path of the file
+     *  @param file the working file
+     *  @param id the blob id of its contents */
+    synchronized void record(String path, File file, String id) {
+        remember(path, stat(file), id);
+    }
+
+    /** Forget anything cached about PATH.
+     *  @param path the repository path of a file */
+    synchronized void forget(String path) {
+        if (_entries.remove(path) != null) {
+            _dirty = true;
+        }
+    }
+
+    /** Save the index, if it has changed since it was read, leaving out
+     *  the entries of files modified no earlier than the moment it is
+     *  written, which becomes its timestamp. */
+    synchronized void save() {
+        if (!_dirty) {
+            return;
+        }
+        File tmp = new File(_file.getPath() + ".tmp");
+        Utils.writeContents(tmp, new byte[0]);
+        long stamp = mtime(tmp);
+        ArrayList<Map.Entry<String, Entry>> kept =
+            new ArrayList<Map.Entry<String, Entry>>();
+        for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+            if (e.getValue().mtime < stamp) {
+                kept.add(e);
+            }
+        }
+        Encoder out = new Encoder();
+        out.putInt(MAGIC).putByte(FORMAT).putInt(kept.size());
+        for (Map.Entry<String, Entry> e : kept) {
+            Entry v = e.getValue();
+            out.putString(e.getKey()).putLong(v.mtime).putLong(v.size)
+                .putLong(v.inode).putId(v.id);
+        }
+        Utils.writeContents(tmp, out.toByteArray());
+        try {
+            Files.move(tmp.toPath(), _file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _stamp = stamp;
+        _dirty = false;
+    }
+
+    /** Cache ID as the contents of PATH, whose stat data is STAT.  The
+     *  entry is trusted once the index has been written after the file
+     *  was last modified.
+     *  @param path the repository path of the file
+     *  @param stat the file's stat data, or null if unavailable
+     *  @param id the blob id of its contents */
+    private void remember(String path, Entry stat, String id) {
+        if (stat == null) {
+            forget(path);
+            return;
+        }
+        _entries.put(path, new Entry(stat.mtime, stat.size, stat.inode, id));
+        _dirty = true;
+    }
+
+    /** @return the modification time of FILE in nanoseconds.
+     *  @param file an existing file */
+    private static long mtime(File file) {
+        try {
+            return Files.getLastModifiedTime(file.toPath())
+                .to(TimeUnit.NANOSECONDS);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** @return the stat data of FILE, with no id, or null if it cannot
+     *  be read.
+     *  @param file a working file */
+    private static Entry stat(File file) {
+        Path p = file.toPath();
+        try {
+            BasicFileAttributes attrs =
+                Files.readAttributes(p, BasicFileAttributes.class);
+            long inode;
+            try {
+                inode = ((Number) Files.getAttribute(p, "unix:ino"))
+                    .longValue();
+            } catch (UnsupportedOperationException | IllegalArgumentException
+                     excp) {
+                Object key = attrs.fileKey();
+                inode = key == null ? 0 : key.hashCode();
+            }
+            FileTime mtime = attrs.lastModifiedTime();
+            return new Entry(mtime.to(TimeUnit.NANOSECONDS), attrs.size(),
+                             inode, null);
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Cached facts about one working file. */
+    private static class Entry {
+        /** A file last modified at MTIME, of SIZE bytes, with inode
+         *  INODE, whose contents are the blob ID. */
+        Entry(long mtime, long size, long inode, String id) {
+            this.mtime = mtime;
+            this.size = size;
+            this.inode = inode;
+            this.id = id;
+        }
+
+        /** @return whether OTHER has the same stat data as this.
+         *  @param other stat data of a file */
+        boolean sameStat(Entry other) {
+            return mtime == other.mtime && size == other.size
+                && inode == other.inode;
+        }
+
+        /** Modification time in nanoseconds. */
+        private final long mtime;
+        /** Size in bytes. */
+        private final long size;
+        /** Inode number, or a stand-in where inodes are unavailable. */
+        private final long inode;
+        /** Blob id of the contents. */
+        private final String id;
+    }
+
+    /** The index file. */
+    private final File _file;
+
+    /** The algorithm of the repository's ids. */
+    private final Hash _hash;
+
+    /** Cached entries by path. */
+    private final HashMap<String, Entry> _entries;
+
+    /** Whether _entries differs from the file. */
+    private boolean _dirty;
+
+    /** The modification time of the index file when it was last read or
+     *  written, in nanoseconds; entries of files modified no earlier are
+     *  racy. */
+    private long _stamp = Long.MIN_VALUE;
+}
@@ -0,0 +1,313 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/** Copies the history of one commit from one object store to another,
+ *  sending only what the receiver lacks.  The two sides negotiate on
+ *  commit ids: the receiver names the commits it has (the heads of its
+ *  branches), and, as every store holds the whole history of each commit
+ *  it holds, everything reachable from those is common.  The sender
+ *  walks back from the tip and from the common heads together, highest
+ *  generation first, marking the ancestors of common commits as common,
+ *  and stops as soon as every commit still pending is common.  The walk
+ *  takes generations and parents from the sender's commit-graph, so no
+ *  commit is read to negotiate; commits the graph lacks, made since it
+ *  was last written, are read and walked first, latest first, as the
+ *  graph holds every ancestor of the commits in it.  Each new
+ *  commit's tree is then compared with the trees of its parents, and
+ *  only the subtrees and blobs that differ from those are chosen; a
+ *  subtree equal to one of its parents' is skipped without being read.
+ *  The delta bases and chunks of a chosen blob, which no commit names,
+ *  are looked up in the receiver's index.  The objects chosen are
+ *  written as one pack stream, in the pack's own record format, and
+ *  absorbed by the receiver in a single pass.
+ *  @author sky
+ */
+class Transfer {
+
+    /** A transfer from the store FROM, whose commit-graph is GRAPH, to
+     *  the store TO, which keeps its files in DIR.
+     *  @param from the sending store
+     *  @param graph the sender's commit-graph, which may be empty
+     *  @param to the receiving store
+     *  @param dir the receiver's repository directory */
+    Transfer(ObjectStore from, CommitGraph graph, ObjectStore to, File dir) {
+        _from = from;
+        _graph = graph;
+        _to = to;
+        _dir = dir;
+        _commits = new ArrayList<String>();
+        _objects = new ArrayList<String>();
+        _chosen = new HashSet<String>();
+        _read = new HashMap<String, Commit>();
+    }
+
+    /** Find the commits reachable from TIP that are not reachable from
+     *  any of HAVES, and every object they need.
+     *  @param tip the id of a commit in the sending store
+     *  @param haves the ids of commits the receiver has, such as the
+     *               heads of its branches; those the sender does not
+     *               know are ignored
+     *  @return the wanted commits, each after its parents */
+    List<String> negotiate(String tip, Collection<String> haves) {
+        HashSet<String> common = new HashSet<String>();
+        HashSet<String> seen = new HashSet<String>();
+        HashSet<String> queued = new HashSet<String>();
+        PriorityQueue<String> queue = new PriorityQueue<String>(
+            Comparator.comparingInt(this::generation)
+            .thenComparingLong(this::time).reversed());
+        int pending = 0;
+        seen.add(tip);
+        queued.add(tip);
+        queue.add(tip);
+        pending += 1;
+        for (String have : haves) {
+            if (_from.contains(have)) {
+                pending -= markCommon(have, common, seen, queued, queue);
+            }
+        }
+        LinkedHashSet<String> wanted = new LinkedHashSet<String>();
+        while (pending > 0) {
+            String c = queue.poll();
+            queued.remove(c);
+            boolean isCommon = common.contains(c);
+            if (!isCommon) {
+                pending -= 1;
+                wanted.add(c);
+            }
+            for (String parent : parents(c)) {
+                if (isCommon) {
+                    pending -= markCommon(parent, common, seen, queued,
+                                          queue);
+                } else if (seen.add(parent)) {
+                    queued.add(parent);
+                    queue.add(parent);
+                    if (!common.contains(parent)) {
+                        pending += 1;
+                    }
+                }
+            }
+        }
+        wanted.removeAll(common);
+        for (String c : wanted) {
+            order(c, wanted);
+        }
+        for (String c : _commits) {
+            _objects.add(c);
+            ArrayList<String> olds = new ArrayList<String>();
+            for (String parent : parents(commit(c))) {
+                String tree = commit(parent).tree();
+                if (tree != null && !olds.contains(tree)) {
+                    olds.add(tree);
+                }
+            }
+            addTree(commit(c).tree(), olds);
+        }
+        return _commits;
+    }
+
+    /** Mark the commit UID as common, queueing it unless it has already
+     *  been walked.
+     *  @param uid the id of a commit known to the receiver
+     *  @param common the commits known to be common
+     *  @param seen the commits queued so far
+     *  @param queued the commits now in QUEUE
+     *  @param queue the commits still to be walked
+     *  @return 1 if UID was waiting in QUEUE as a possibly new commit,
+     *          and so is no longer pending, and otherwise 0 */
+    private int markCommon(String uid, Set<String> common, Set<String> seen,
+                           Set<String> queued, PriorityQueue<String> queue) {
+        if (!common.add(uid)) {
+            return 0;
+        }
+        if (queued.contains(uid)) {
+            return 1;
+        }
+        if (seen.add(uid)) {
+            queued.add(uid);
+            queue.add(uid);
+        }
+        return 0;
+    }
+
+    /** Append the commit UID to the wanted commits after those of its
+     *  ancestors that are in WANTED, unless it is there already.
+     *  @param uid a wanted commit
+     *  @param wanted every wanted commit */
+    private void order(String uid, Set<String> wanted) {
+        ArrayDeque<String> pending = new ArrayDeque<String>();
+        pending.push(uid);
+        while (!pending.isEmpty()) {
+            String top = pending.peek();
+            if (_chosen.contains(top)) {
+                pending.pop();
+                continue;
+            }
+            boolean ready = true;
+            for (String parent : parents(top)) {
+                if (wanted.contains(parent) && !_chosen.contains(parent)) {
+                    pending.push(parent);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                pending.pop();
+                _chosen.add(top);
+                _commits.add(top);
+            }
+        }
+    }
+
+    /** Send the objects chosen by negotiate to the receiver.
+     *  @return the number of bytes sent */
+    long send() {
+        if (_objects.isEmpty()) {
+            return 0;
+        }
+        File stream = new File(_dir, "incoming.pack");
+        try {
+            long size = _from.exportPack(_objects, stream);
+            _to.importPack(stream);
+            return size;
+        } finally {
+            stream.delete();
+        }
+    }
+
+    /** @return the commit UID, read from the sender.
+     *  @param uid the id of a commit */
+    private Commit commit(String uid) {
+        Commit result = _read.get(uid);
+        if (result == null) {
+            if (_from.type(uid) != ObjectStore.COMMIT) {
+                throw new IllegalArgumentException("missing commit " + uid);
+            }
+            result = Commit.decode(_from.buffer(uid), _from.hash());
+            _read.put(uid, result);
+        }
+        return result;
+    }
+
+    /** @return the parents of the commit UID.
+     *  @param uid the id of a commit */
+    private List<String> parents(String uid) {
+        if (_graph.contains(uid)) {
+            return _graph.parents(uid);
+        }
+        return parents(commit(uid));
+    }
+
+    /** @return the parents of COMMIT.
+     *  @param commit a commit */
+    private static List<String> parents(Commit commit) {
+        String[] parents = commit.parents();
+        return parents == null ? List.of() : Arrays.asList(parents);
+    }
+
+    /** @return the generation number of the commit UID, or
+     *  Integer.MAX_VALUE if the sender's commit-graph lacks it.
+     *  @param uid the id of a commit */
+    private int generation(String uid) {
+        return _graph.contains(uid) ? _graph.generation(uid)
+            : Integer.MAX_VALUE;
+    }
+
+    /** @return the time of the commit UID.
+     *  @param uid the id of a commit */
+    private long time(String uid) {
+        return _graph.contains(uid) ? _graph.time(uid)
+            : commit(uid).timestamp();
+    }
+
+    /** @return the objects chosen by negotiate, in the order in which
+     *  they are sent. */
+    List<String> objects() {
+        return _objects;
+    }
+
+    /** Choose the tree ID, unless it is one of OLDS, and those of the
+     *  subtrees and blobs beneath it that differ from the entries of the
+     *  same name and kind in the trees OLDS.
+     *  @param id the id of a tree, or null for an empty tree
+     *  @param olds the ids of the corresponding trees of the parents */
+    private void addTree(String id, List<String> olds) {
+        if (id == null || olds.contains(id) || !_chosen.add(id)) {
+            return;
+        }
+        _objects.add(id);
+        Tree tree = Tree.read(_from, id);
+        ArrayList<Tree> before = new ArrayList<Tree>();
+        for (String old : olds) {
+            before.add(Tree.read(_from, old));
+        }
+        for (String name : tree.names()) {
+            String blob = tree.id(name, Tree.BLOB);
+            byte kind = blob != null ? Tree.BLOB : Tree.TREE;
+            ArrayList<String> subs = new ArrayList<String>();
+            for (Tree old : before) {
+                String sub = old.id(name, kind);
+                if (sub != null && !subs.contains(sub)) {
+                    subs.add(sub);
+                }
+            }
+            if (blob == null) {
+                addTree(tree.id(name, Tree.TREE), subs);
+            } else if (!subs.contains(blob)) {
+                addBlob(blob);
+            }
+        }
+    }
+
+    /** Choose the blob ID, the bases it is stored against and its chunks,
+     *  unless the receiver has them.
+     *  @param id the id of a blob */
+    private void addBlob(String id) {
+        while (id != null && !_to.contains(id) && _chosen.add(id)) {
+            _objects.add(id);
+            List<String> chunks = _from.chunks(id);
+            if (chunks != null) {
+                for (String chunk : chunks) {
+                    if (!_to.contains(chunk) && _chosen.add(chunk)) {
+                        _objects.add(chunk);
+                    }
+                }
+            }
+            id = _from.deltaBase(id);
+        }
+    }
+
+    /** The sending store. */
+    private final ObjectStore _from;
+
+    /** The sender's commit-graph. */
+    private final CommitGraph _graph;
+
+    /** The receiving store. */
+    private final ObjectStore _to;
+
+    /** The receiver's repository directory. */
+    private final File _dir;
+
+    /** The wanted commits, parents first. */
+    private final ArrayList<String> _commits;
+
+    /** Every object to send. */
+    private final ArrayList<String> _objects;
+
+    /** Ids of the objects chosen so far. */
+    private final HashSet<String> _chosen;
+
+    /** Commits read from the sender, by id. */
+    private final HashMap<String, Commit> _read;
+}
@@ -0,0 +1,295 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** A directory snapshot stored in the ObjectStore.  A tree maps names to
+ *  blobs and to subtrees and is identified by the hash of its encoding,
+ *  so that identical directories in different commits are stored once
+ *  and can be recognized without being read.  The encoding is the
+ *  concatenation, in name order, of
+ *      KIND (1 byte)  NAME (UTF-8)  0  ID (ID BYTES)
+ *  for each entry, where KIND is BLOB or TREE.
+ *  @author sky
+ */
+class Tree {
+
+    /** Kind of an entry naming a file. */
+    static final byte BLOB = 1;
+
+    /** Kind of an entry naming a subdirectory. */
+    static final byte TREE = 2;
+
+    /** Separator of the components of a path. */
+    static final char SEP = '/';
+
+    /** An empty tree. */
+    Tree() {
+        _entries = new TreeMap<String, Entry>();
+    }
+
+    /** @return the tree with id ID read from STORE.
+     *  @param store the object store
+     *  @param id the hash of a tree */
+    static Tree read(ObjectStore store, String id) {
+        byte[] data = store.get(id);
+        if (data == null) {
+            throw new IllegalArgumentException("missing tree " + id);
+        }
+        return decode(data, store.hash());
+    }
+
+    /** @return the id of the blob or subtree at PATH beneath the tree
+     *  with id ROOT, or null if there is none.
+     *  @param store the object store
+     *  @param root the id of a tree, or null for an empty tree
+     *  @param path a path of components separated by SEP */
+    static String find(ObjectStore store, String root, String path) {
+        String id = root;
+        byte kind = TREE;
+        for (String name : path.split(String.valueOf(SEP))) {
+            if (id == null || kind != TREE) {
+                return null;
+            }
+            Entry e = read(store, id)._entries.get(name);
+            if (e == null) {
+                return null;
+            }
+            id = e.id;
+            kind = e.kind;
+        }
+        return id;
+    }
+
+    /** @return the tree whose encoding is DATA.
+     *  @param data the contents of a tree object
+     *  @param hash the algorithm of the repository's ids */
+    static Tree decode(byte[] data, Hash hash) {
+        Tree result = new Tree();
+        int idBytes = hash.bytes();
+        int i = 0;
+        while (i < data.length) {
+            byte kind = data[i];
+            int end = i + 1;
+            while (data[end] != 0) {
+                end += 1;
+            }
+            String name = new String(data, i + 1, end - i - 1,
+                                     StandardCharsets.UTF_8);
+            byte[] raw = Arrays.copyOfRange(data, end + 1,
+                                            end + 1 + idBytes);
+            result._entries.put(name, new Entry(kind, Utils.toHex(raw)));
+            i = end + 1 + idBytes;
+        }
+        return result;
+    }
+
+    /** @return the names of the entries of this tree, in order. */
+    Set<String> names() {
+        return _entries.keySet();
+    }
+
+    /** @return the id of the entry NAME, or null if there is no such
+     *  entry or it is not of kind KIND.
+     *  @param name the name of an entry
+     *  @param kind BLOB or TREE */
+    String id(String name, byte kind) {
+        Entry e = _entries.get(name);
+        return e != null && e.kind == kind ? e.id : null;
+    }
+
+    /** @return the ids of the entries of kind KIND, in name order.
+     *  @param kind BLOB or TREE */
+    List<String> ids(byte kind) {
+        ArrayList<String> result = new ArrayList<String>();
+        for (Entry e : _entries.values()) {
+            if (e.kind == kind) {
+                result.add(e.id);
+            }
+        }
+        return result;
+    }
+
+    /** @return the id of this tree after saving it in STORE.
+     *  @param store the object store */
+    String write(ObjectStore store) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+            out.write(e.getValue().kind);
+            out.writeBytes(e.getKey().getBytes(StandardCharsets.UTF_8));
+            out.write(0);
+            out.writeBytes(Utils.fromHex(e.getValue().id));
+        }
+        byte[] data = out.toByteArray();
+        String id = Utils.hash(store.hash(), "tree", data);
+        store.put(ObjectStore.TREE, id, data);
+        return id;
+    }
+
+    /** @return the id of the tree obtained from the tree with id ROOT by
+     *  applying CHANGES, which maps paths to new blob ids, or to null for
+     *  paths to be removed.  Only the trees along changed paths are read
+     *  or written; every other subtree is shared with ROOT.  ROOT may be
+     *  null, denoting an empty tree.
+     *  @param store the object store
+     *  @param root the id of the original tree, or null
+     *  @param changes the paths to update */
+    static String update(ObjectStore store, String root,
+                         Map<String, String> changes) {
+        return apply(store, root, changes).write(store);
+    }
+
+    /** @return the tree with id ROOT (or an empty tree if ROOT is null)
+     *  with CHANGES applied, writing any changed subtrees to STORE.
+     *  Changes below a directory are applied before changes to the names
+     *  directly in it, so that a change set that replaces a directory by
+     *  a file of the same name, or a file by a directory, leaves the new
+     *  entry in place.
+     *  @param store the object store
+     *  @param root the id of the original tree, or null
+     *  @param changes the paths to update */
+    private static Tree apply(ObjectStore store, String root,
+                              Map<String, String> changes) {
+        Tree tree = root == null ? new Tree() : read(store, root);
+        HashMap<String, String> here = new HashMap<String, String>();
+        HashMap<String, HashMap<String, String>> below =
+            new HashMap<String, HashMap<String, String>>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int sep = path.indexOf(SEP);
+            if (sep < 0) {
+                here.put(path, change.getValue());
+            } else {
+                below.computeIfAbsent(path.substring(0, sep),
+                                      k -> new HashMap<String, String>())
+                    .put(path.substring(sep + 1), change.getValue());
+            }
+        }
+        for (Map.Entry<String, HashMap<String, String>> sub
+                 : below.entrySet()) {
+            Entry old = tree._entries.get(sub.getKey());
+            String base = old != null && old.kind == TREE ? old.id : null;
+            Tree child = apply(store, base, sub.getValue());
+            if (!child._entries.isEmpty()) {
+                tree._entries.put(sub.getKey(),
+                                  new Entry(TREE, child.write(store)));
+            } else if (base != null) {
+                tree._entries.remove(sub.getKey());
+            }
+        }
+        for (Map.Entry<String, String> change : here.entrySet()) {
+            Entry old = tree._entries.get(change.getKey());
+            if (change.getValue() != null) {
+                tree._entries.put(change.getKey(),
+                                  new Entry(BLOB, change.getValue()));
+            } else if (old != null && old.kind == BLOB) {
+                tree._entries.remove(change.getKey());
+            }
+        }
+        return tree;
+    }
+
+    /** @return a map from every file path under the tree with id ROOT to
+     *  its blob id.
+     *  @param store the object store
+     *  @param root the id of a tree */
+    static HashMap<String, String> flatten(ObjectStore store, String root) {
+        HashMap<String, String> result = new HashMap<String, String>();
+        flatten(store, root, "", result);
+        return result;
+    }
+
+    /** Add every file under the tree with id ROOT to RESULT, prefixing its
+     *  path with PREFIX.
+     *  @param store the object store
+     *  @param root the id of a tree
+     *  @param prefix the path of the tree
+     *  @param result the map being built */
+    private static void flatten(ObjectStore store, String root,
+                                String prefix, Map<String, String> result) {
+        for (Map.Entry<String, Entry> e : read(store, root)._entries
+                 .entrySet()) {
+            String path = prefix + e.getKey();
+            if (e.getValue().kind == TREE) {
+                flatten(store, e.getValue().id, path + SEP, result);
+            } else {
+                result.put(path, e.getValue().id);
+            }
+        }
+    }
+
+    /** @return the paths whose blobs differ between the trees with ids A
+     *  and B, each mapped to its old and new blob ids (null where the file
+     *  is absent).  Subtrees with equal ids are skipped without being
+     *  read.  Either id may be null, denoting an empty tree.
+     *  @param store the object store
+     *  @param a the id of the old tree
+     *  @param b the id of the new tree */
+    static TreeMap<String, String[]> diff(ObjectStore store, String a,
+                                          String b) {
+        TreeMap<String, String[]> result = new TreeMap<String, String[]>();
+        diff(store, a, b, "", result);
+        return result;
+    }
+
+    /** Add to RESULT the differences between the trees with ids A and B,
+     *  prefixing paths with PREFIX.
+     *  @param store the object store
+     *  @param a the id of the old tree, or null
+     *  @param b the id of the new tree, or null
+     *  @param prefix the path of the trees
+     *  @param result the map being built */
+    private static void diff(ObjectStore store, String a, String b,
+                             String prefix, Map<String, String[]> result) {
+        if (a != null && a.equals(b)) {
+            return;
+        }
+        Tree ta = a == null ? new Tree() : read(store, a);
+        Tree tb = b == null ? new Tree() : read(store, b);
+        TreeSet<String> names = new TreeSet<String>(ta._entries.keySet());
+        names.addAll(tb._entries.keySet());
+        for (String name : names) {
+            Entry ea = ta._entries.get(name), eb = tb._entries.get(name);
+            if (ea != null && eb != null && ea.kind == eb.kind
+                && ea.id.equals(eb.id)) {
+                continue;
+            }
+            String path = prefix + name;
+            String blobA = ea != null && ea.kind == BLOB ? ea.id : null;
+            String blobB = eb != null && eb.kind == BLOB ? eb.id : null;
+            if (blobA != null || blobB != null) {
+                result.put(path, new String[] {blobA, blobB});
+            }
+            String treeA = ea != null && ea.kind == TREE ? ea.id : null;
+            String treeB = eb != null && eb.kind == TREE ? eb.id : null;
+            if (treeA != null || treeB != null) {
+                diff(store, treeA, treeB, path + SEP, result);
+            }
+        }
+    }
+
+    /** One named entry of a tree. */
+    private static class Entry {
+        /** An entry of kind KIND referring to the object with id ID. */
+        Entry(byte kind, String id) {
+            this.kind = kind;
+            this.id = id;
+        }
+
+        /** BLOB or TREE. */
+        private final byte kind;
+        /** The id of the blob or subtree. */
+        private final String id;
+    }
+
+    /** The entries of this tree, by name. */
+    private final TreeMap<String, Entry> _entries;
+}
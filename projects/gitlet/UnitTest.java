@@ -4,6 +4,22 @@ import ucb.junit.textui;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
 /** The suite of all JUnit tests for the gitlet package.
  *  @author
  */
@@ -20,4 +36,1185 @@ public class UnitTest {
     public void placeholderTest() {
     }
 
+    /** The algorithm of repositories that do not choose one. */
+    private static final Hash SHA1 = Hash.named(Hash.DEFAULT);
+
+    /** Names of every algorithm. */
+    private static final String[] HASHES = { "sha1", "sha256", "murmur3" };
+
+    /** @return a new empty temporary directory. */
+    private static File tempDir() {
+        try {
+            File dir = Files.createTempDirectory("gitlet-test").toFile();
+            dir.deleteOnExit();
+            return dir;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** @return an empty object store in a new temporary directory. */
+    private static ObjectStore tempStore() {
+        return new ObjectStore(tempDir());
+    }
+
+    /** @return a map from alternating paths and blob ids in ENTRIES.
+     *  @param entries path, id, path, id, ... (an id may be null) */
+    private static HashMap<String, String> paths(String... entries) {
+        HashMap<String, String> result = new HashMap<String, String>();
+        for (int i = 0; i < entries.length; i += 2) {
+            result.put(entries[i], entries[i + 1]);
+        }
+        return result;
+    }
+
+    /** Tree.update builds nested trees that flatten back to their files,
+     *  shares unchanged subtrees, and prunes directories left empty. */
+    @Test
+    public void treeUpdateTest() {
+        ObjectStore store = tempStore();
+        String a = Utils.hash(SHA1, "a"), b = Utils.hash(SHA1, "b");
+        String c = Utils.hash(SHA1, "c");
+        String t1 = Tree.update(store, null,
+                                paths("x", a, "d/y", b, "d/e/z", c));
+        assertEquals(paths("x", a, "d/y", b, "d/e/z", c),
+                     Tree.flatten(store, t1));
+        String t2 = Tree.update(store, t1, paths("x", b));
+        assertEquals(Set.of("x"), Tree.diff(store, t1, t2).keySet());
+        String t3 = Tree.update(store, t2, paths("d/e/z", null));
+        assertEquals(paths("x", b, "d/y", b), Tree.flatten(store, t3));
+        String t4 = Tree.update(store, t3, paths("d/y", null));
+        assertEquals(paths("x", b), Tree.flatten(store, t4));
+        assertEquals(Tree.update(store, null, paths("x", b)), t4);
+        store.close();
+    }
+
+    /** A change set that replaces a directory by a file of the same name,
+     *  or a file by a directory, leaves the new entry in the tree. */
+    @Test
+    public void treeReplaceDirectoryTest() {
+        ObjectStore store = tempStore();
+        String a = Utils.hash(SHA1, "a"), b = Utils.hash(SHA1, "b");
+        String dir = Tree.update(store, null, paths("d/x", a, "y", a));
+        String file = Tree.update(store, dir, paths("d", b, "d/x", null));
+        assertEquals(paths("d", b, "y", a), Tree.flatten(store, file));
+        String back = Tree.update(store, file, paths("d", null, "d/x", a));
+        assertEquals(dir, back);
+        store.close();
+    }
+
+    /** Replaying a journal over a snapshot that already reflects it
+     *  changes nothing, and a record cut short by a crash is ignored. */
+    @Test
+    public void journalReplayTest() {
+        File dir = tempDir();
+        File base = new File(dir, "base"), once = new File(dir, "once");
+        File twice = new File(dir, "twice"), log = new File(dir, "journal");
+        String c0 = Utils.hash(SHA1, "c0"), c1 = Utils.hash(SHA1, "c1");
+        Utils.writeContents(base, new Encoder().putInt(Git.MAGIC)
+                            .putByte(Git.FORMAT).putString("master")
+                            .putInt(1).putString("master").putId(c0)
+                            .putInt(0).putInt(0).toByteArray());
+        Journal journal = new Journal(log);
+        journal.record(new Encoder().putByte(Journal.SET_BRANCH)
+                       .putString("other").putId(c1));
+        journal.record(new Encoder().putByte(Journal.SET_HEAD)
+                       .putString("other"));
+        journal.record(new Encoder().putByte(Journal.STAGE)
+                       .putString("a.txt").putId(c1));
+        journal.record(new Encoder().putByte(Journal.REMOVE)
+                       .putString("b.txt"));
+        journal.record(new Encoder().putByte(Journal.REMOVE)
+                       .putString("b.txt"));
+        journal.record(new Encoder().putByte(Journal.DELETE_BRANCH)
+                       .putString("master"));
+        journal.flush();
+        assertEquals(6, journal.records().size());
+
+        Git.load(base, log).write(once);
+        Git.load(once, log).write(twice);
+        assertArrayEquals(Utils.readContents(once),
+                          Utils.readContents(twice));
+        Git state = Git.read(once);
+        state.write(twice);
+        assertArrayEquals(Utils.readContents(once),
+                          Utils.readContents(twice));
+        assertFalse(Arrays.equals(Utils.readContents(base),
+                                            Utils.readContents(once)));
+
+        try {
+            Files.write(log.toPath(), new byte[] { 0, 0, 0, 9, 1, 0 },
+                        StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        assertEquals(6, new Journal(log).records().size());
+        Git.load(base, log).write(twice);
+        assertArrayEquals(Utils.readContents(once),
+                          Utils.readContents(twice));
+    }
+
+    /** @return the lines of TEXT.
+     *  @param text a text */
+    private static Diff.Lines lines(String text) {
+        return new Diff.Lines(ByteBuffer.wrap(text.getBytes(
+            StandardCharsets.UTF_8)));
+    }
+
+    /** @return the text whose lines are the numbers in LINES.
+     *  @param lines line contents */
+    private static String text(int[] lines) {
+        StringBuilder result = new StringBuilder();
+        for (int line : lines) {
+            result.append(line).append('\n');
+        }
+        return result.toString();
+    }
+
+    /** @return the length of the longest common subsequence of A and B.
+     *  @param a a sequence
+     *  @param b a sequence */
+    private static int lcs(int[] a, int[] b) {
+        int[][] best = new int[a.length + 1][b.length + 1];
+        for (int i = a.length - 1; i >= 0; i -= 1) {
+            for (int j = b.length - 1; j >= 0; j -= 1) {
+                best[i][j] = a[i] == b[j] ? best[i + 1][j + 1] + 1
+                    : Math.max(best[i + 1][j], best[i][j + 1]);
+            }
+        }
+        return best[0][0];
+    }
+
+    /** Diff.compare reports ordered, non-touching edits that turn one
+     *  text into the other with as few changed lines as possible. */
+    @Test
+    public void diffMinimalTest() {
+        Random random = new Random(61);
+        for (int trial = 0; trial < 300; trial += 1) {
+            int[] a = new int[random.nextInt(30)];
+            int[] b = new int[random.nextInt(30)];
+            for (int i = 0; i < a.length; i += 1) {
+                a[i] = random.nextInt(4);
+            }
+            for (int i = 0; i < b.length; i += 1) {
+                b[i] = random.nextInt(4);
+            }
+            ArrayList<int[]> edits = new ArrayList<int[]>();
+            Diff.compare(lines(text(a)), lines(text(b)),
+                (a0, a1, b0, b1) -> edits.add(new int[] {a0, a1, b0, b1}));
+            ArrayList<Integer> rebuilt = new ArrayList<Integer>();
+            int changed = 0, x = 0, y = 0;
+            for (int[] e : edits) {
+                assertTrue(e[0] <= e[1] && e[2] <= e[3]);
+                assertTrue(e[0] < e[1] || e[2] < e[3]);
+                assertEquals(e[0] - x, e[2] - y);
+                assertTrue(e[0] > x || x == 0 && y == 0);
+                y = e[3];
+                for (; x < e[0]; x += 1) {
+                    rebuilt.add(a[x]);
+                }
+                for (int j = e[2]; j < e[3]; j += 1) {
+                    rebuilt.add(b[j]);
+                }
+                changed += (e[1] - e[0]) + (e[3] - e[2]);
+                x = e[1];
+            }
+            for (; x < a.length; x += 1) {
+                rebuilt.add(a[x]);
+            }
+            assertEquals(Arrays.toString(b), rebuilt.toString());
+            assertEquals(a.length + b.length - 2 * lcs(a, b), changed);
+        }
+    }
+
+    /** Diff.unified writes one hunk with context, joining changes whose
+     *  contexts meet, and marks a missing final newline. */
+    @Test
+    public void diffUnifiedTest() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Diff.unified("a/f", "b/f", lines("1\n2\n3\n4\n5\n6\n7\n8\n9\n"),
+                     lines("1\n2\n3\nfour\n5\n6\n7\n8\n9\n10\n"), out);
+        assertEquals("--- a/f\n+++ b/f\n@@ -1,9 +1,10 @@\n 1\n 2\n 3\n"
+                     + "-4\n+four\n 5\n 6\n 7\n 8\n 9\n+10\n",
+                     out.toString());
+        out.reset();
+        Diff.unified("a/f", "b/f", lines("x\ny"), lines("x\nz"), out);
+        assertEquals("--- a/f\n+++ b/f\n@@ -1,2 +1,2 @@\n x\n-y\n"
+                     + "\\ No newline at end of file\n+z\n"
+                     + "\\ No newline at end of file\n", out.toString());
+        out.reset();
+        Diff.unified("a/f", "b/f", lines("same\n"), lines("same\n"), out);
+        assertEquals("", out.toString());
+    }
+
+    /** @return the merge of OURS and THEIRS from BASE, followed by
+     *  "clean" or "conflict".
+     *  @param base the common ancestor
+     *  @param ours the current version
+     *  @param theirs the given version */
+    private static String merge(String base, String ours, String theirs) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        boolean clean = Merge3.merge(lines(base), lines(ours),
+                                     lines(theirs), out);
+        return out.toString() + (clean ? "clean" : "conflict");
+    }
+
+    /** Merge3 takes each side's changes to separate regions, accepts
+     *  identical changes from both, and brackets only the region where
+     *  the sides disagree. */
+    @Test
+    public void merge3Test() {
+        assertEquals("A\nb\nc\nd\nE\nclean",
+                     merge("a\nb\nc\nd\ne\n", "A\nb\nc\nd\ne\n",
+                           "a\nb\nc\nd\nE\n"));
+        assertEquals("a\nX\nc\nclean",
+                     merge("a\nb\nc\n", "a\nX\nc\n", "a\nX\nc\n"));
+        assertEquals("a\nb\nclean",
+                     merge("a\nb\nc\n", "a\nb\nc\n", "a\nb\n"));
+        assertEquals("a\n" + Merge3.OURS + "X\n" + Merge3.SEP + "Y\n"
+                     + Merge3.THEIRS + "c\nd\nE\nconflict",
+                     merge("a\nb\nc\nd\ne\n", "a\nX\nc\nd\ne\n",
+                           "a\nY\nc\nd\nE\n"));
+    }
+
+    /** Delta.apply inverts Delta.create, including for empty and
+     *  unrelated texts. */
+    @Test
+    public void deltaRoundTripTest() {
+        Random random = new Random(2);
+        byte[] base = new byte[5000];
+        random.nextBytes(base);
+        byte[] target = Arrays.copyOf(base, 6000);
+        System.arraycopy(base, 100, target, 3000, 2000);
+        target[10] ^= 1;
+        byte[][] targets = { target, base, new byte[0], "x".getBytes() };
+        for (byte[] t : targets) {
+            assertArrayEquals(t, Delta.apply(base, Delta.create(base, t)));
+            assertArrayEquals(t, Delta.apply(new byte[0],
+                                             Delta.create(new byte[0], t)));
+        }
+        assertTrue(Delta.create(base, target).length < target.length / 4);
+    }
+
+    /** Blobs stored against their previous versions form delta chains no
+     *  deeper than gitlet.deltaDepth, and every version reads back. */
+    @Test
+    public void deltaDepthTest() {
+        deltaChains("3", 10, 3);
+    }
+
+    /** A gitlet.deltaDepth too large for the DEPTH byte is clamped to
+     *  ObjectStore.MAX_DEPTH. */
+    @Test
+    public void deltaDepthClampTest() {
+        deltaChains("1000", ObjectStore.MAX_DEPTH + 3,
+                    ObjectStore.MAX_DEPTH);
+    }
+
+    /** Store COUNT versions of a blob, each against the one before, in
+     *  a store whose gitlet.deltaDepth is LIMIT, and check that they read
+     *  back and form chains of at most MAX deltas.
+     *  @param limit the value of gitlet.deltaDepth
+     *  @param count the number of versions
+     *  @param max the expected longest chain */
+    private static void deltaChains(String limit, int count, int max) {
+        System.setProperty("gitlet.deltaDepth", limit);
+        ObjectStore store;
+        try {
+            store = tempStore();
+        } finally {
+            System.clearProperty("gitlet.deltaDepth");
+        }
+        Random random = new Random(3);
+        byte[] data = new byte[20000];
+        random.nextBytes(data);
+        ArrayList<String> ids = new ArrayList<String>();
+        ArrayList<byte[]> versions = new ArrayList<byte[]>();
+        String prev = null;
+        for (int v = 0; v < count; v += 1) {
+            data = data.clone();
+            data[random.nextInt(data.length)] ^= 1;
+            String id = Utils.hash(store.hash(), data);
+            store.putBlob(id, data, prev);
+            ids.add(id);
+            versions.add(data);
+            prev = id;
+        }
+        for (int v = 0; v < ids.size(); v += 1) {
+            int depth = 0;
+            for (String id = ids.get(v); store.deltaBase(id) != null;
+                 id = store.deltaBase(id)) {
+                depth += 1;
+            }
+            assertEquals(v % (max + 1), depth);
+            assertArrayEquals(versions.get(v), store.get(ids.get(v)));
+        }
+        store.close();
+    }
+
+    /** @return a commit with message MSG and PARENTS, added to GRAPH.
+     *  @param graph a commit graph
+     *  @param msg the message, which makes the id unique
+     *  @param parents the ids of the parents */
+    private static String commit(CommitGraph graph, String msg,
+                                 String... parents) {
+        Commit commit = new Commit(msg, null, parents, false, SHA1);
+        graph.add(commit);
+        return commit.uID();
+    }
+
+    /** CommitGraph numbers generations, finds the nearest common ancestor
+     *  even when a shorter path leads to an older one, picks one of the
+     *  two best bases of a criss-cross merge, and reads back the same
+     *  graph from its file. */
+    @Test
+    public void mergeBaseTest() {
+        File file = new File(tempDir(), "commit-graph");
+        CommitGraph graph = new CommitGraph(file, SHA1);
+        String r = commit(graph, "r");
+        String a = commit(graph, "a", r), b = commit(graph, "b", a);
+        String c = commit(graph, "c", b), p = commit(graph, "p", r);
+        String x = commit(graph, "x", c), y = commit(graph, "y", p, c);
+        assertEquals(1, graph.generation(r));
+        assertEquals(4, graph.generation(c));
+        assertEquals(5, graph.generation(y));
+        assertEquals(c, graph.mergeBase(x, y));
+        assertEquals(c, graph.mergeBase(y, x));
+        assertEquals(b, graph.mergeBase(b, y));
+        assertEquals(r, graph.mergeBase(p, x));
+
+        String l1 = commit(graph, "l1", r), r1 = commit(graph, "r1", r);
+        String l2 = commit(graph, "l2", l1, r1);
+        String r2 = commit(graph, "r2", r1, l1);
+        String base = graph.mergeBase(l2, r2);
+        assertTrue(base.equals(l1) || base.equals(r1));
+
+        String other = commit(graph, "other");
+        assertNull(graph.mergeBase(other, x));
+
+        CommitGraph reread = new CommitGraph(file, SHA1);
+        assertEquals(graph.size(), reread.size());
+        assertEquals(List.of(p, c), reread.parents(y));
+        assertEquals(c, reread.mergeBase(x, y));
+    }
+
+    /** A graph file whose last record was cut short by a crash loses only
+     *  that record, and commits added afterwards read back with their own
+     *  parents and generations. */
+    @Test
+    public void commitGraphTornTailTest() {
+        File file = new File(tempDir(), "commit-graph");
+        CommitGraph graph = new CommitGraph(file, SHA1);
+        String r = commit(graph, "r"), a = commit(graph, "a", r);
+        damage(file, new byte[] { 0, 0, 0, 1, 2 }, 0);
+        graph = new CommitGraph(file, SHA1);
+        assertEquals(2, graph.size());
+        String b = commit(graph, "b", a), m = commit(graph, "m", r, b);
+        CommitGraph reread = new CommitGraph(file, SHA1);
+        assertEquals(4, reread.size());
+        assertEquals(List.of(a), reread.parents(b));
+        assertEquals(List.of(r, b), reread.parents(m));
+        assertEquals(4, reread.generation(m));
+        assertEquals(a, reread.mergeBase(a, m));
+    }
+
+    /** @return the id, under HASH, of TEXT fed to a digest in pieces of
+     *  LEN bytes.
+     *  @param hash an algorithm
+     *  @param text the bytes to hash
+     *  @param len the size of each piece */
+    private static String pieces(Hash hash, byte[] text, int len) {
+        java.security.MessageDigest md = hash.digest();
+        for (int i = 0; i < text.length; i += len) {
+            md.update(text, i, Math.min(len, text.length - i));
+        }
+        return Utils.toHex(md.digest());
+    }
+
+    /** Each algorithm gives its published digests, and the same digest
+     *  whether its input arrives at once or in pieces that straddle its
+     *  blocks. */
+    @Test
+    public void hashVectorsTest() {
+        Hash sha256 = Hash.named("sha256"), murmur3 = Hash.named("murmur3");
+        assertEquals("da39a3ee5e6b4b0d3255bfef95601890afd80709",
+                     Utils.hash(SHA1, ""));
+        assertEquals("e3b0c44298fc1c149afbf4c8996fb924"
+                     + "27ae41e4649b934ca495991b7852b855",
+                     Utils.hash(sha256, ""));
+        assertEquals("00000000000000000000000000000000",
+                     Utils.hash(murmur3, ""));
+        assertEquals("029bbd41b3a7d8cb191dae486a901e5b",
+                     Utils.hash(murmur3, "hello"));
+        assertEquals("6c1b07bc7bbc4be347939ac4a93c437a",
+                     Utils.hash(murmur3, "The quick brown fox jumps over "
+                                + "the lazy dog"));
+        byte[] text = new byte[1000];
+        new Random(5).nextBytes(text);
+        for (String name : HASHES) {
+            Hash hash = Hash.named(name);
+            String whole = Utils.hash(hash, text);
+            assertEquals(hash.hexLength(), whole.length());
+            for (int len : new int[] { 1, 3, 16, 17, 100 }) {
+                assertEquals(whole, pieces(hash, text, len));
+            }
+            assertEquals(Utils.hash(hash, "ab", "cd"),
+                         Utils.hash(hash, "abcd"));
+        }
+        assertNull(Hash.named("md5"));
+    }
+
+    /** An ObjectId of each algorithm converts to and from hexadecimal and
+     *  raw bytes without loss, orders as its hexadecimal form does, and
+     *  rejects ids of the wrong length or with bad digits. */
+    @Test
+    public void objectIdRoundTripTest() {
+        Random random = new Random(7);
+        for (String name : HASHES) {
+            Hash hash = Hash.named(name);
+            ArrayList<String> hexes = new ArrayList<String>();
+            ArrayList<ObjectId> ids = new ArrayList<ObjectId>();
+            for (int i = 0; i < 200; i += 1) {
+                byte[] raw = new byte[hash.bytes()];
+                random.nextBytes(raw);
+                if (i % 10 == 0) {
+                    raw[0] = hexes.isEmpty() ? 0 : Utils.fromHex(
+                        hexes.get(i - 1))[0];
+                }
+                String hex = Utils.toHex(raw);
+                ObjectId id = ObjectId.of(hex, hash);
+                assertEquals(hex, id.toString());
+                assertArrayEquals(raw, id.raw());
+                assertEquals(hash.bytes(), id.length());
+                assertEquals(id, ObjectId.of(raw));
+                assertEquals(id.hashCode(), ObjectId.of(raw).hashCode());
+                ByteBuffer buf = ByteBuffer.allocate(hash.bytes() + 1);
+                buf.put((byte) 1);
+                id.write(buf);
+                buf.flip().get();
+                assertEquals(id, ObjectId.read(buf, hash));
+                assertFalse(buf.hasRemaining());
+                assertTrue(Utils.isObjectId(hex, hash));
+                hexes.add(hex);
+                ids.add(id);
+            }
+            ids.sort(null);
+            hexes.sort(null);
+            for (int i = 0; i < ids.size(); i += 1) {
+                assertEquals(hexes.get(i), ids.get(i).toString());
+            }
+            String hex = hexes.get(0);
+            assertFalse(Utils.isObjectId(hex.toUpperCase(), hash));
+            assertFalse(Utils.isObjectId("g" + hex.substring(1), hash));
+            assertFalse(Utils.isObjectId(hex + "00", hash));
+            for (String bad : new String[] { hex + "00", hex.substring(2),
+                                             "z" + hex.substring(1) }) {
+                try {
+                    ObjectId.of(bad, hash);
+                    fail("accepted " + bad);
+                } catch (IllegalArgumentException excp) {
+                    continue;
+                }
+            }
+        }
+    }
+
+    /** Repositories that use different algorithms may be open in one
+     *  process at once, each store hashing and decoding with its own. */
+    @Test
+    public void perRepositoryHashTest() {
+        File sha1Dir = tempDir(), murmurDir = tempDir();
+        Hash.named("murmur3").write(murmurDir);
+        ObjectStore sha1Store = new ObjectStore(sha1Dir);
+        ObjectStore murmurStore = new ObjectStore(murmurDir);
+        assertSame(SHA1, sha1Store.hash());
+        assertSame(Hash.named("murmur3"), murmurStore.hash());
+        for (ObjectStore store : List.of(sha1Store, murmurStore)) {
+            Hash hash = store.hash();
+            String blob = Utils.hash(hash, "x");
+            String tree = Tree.update(store, null, paths("d/x", blob));
+            assertEquals(hash.hexLength(), tree.length());
+            assertEquals(paths("d/x", blob), Tree.flatten(store, tree));
+            Commit commit = new Commit("m", tree, null, false, hash);
+            store.put(ObjectStore.COMMIT, commit.uID(), commit.encode());
+            Commit back = Commit.decode(store.buffer(commit.uID()), hash);
+            assertEquals(commit.uID(), back.rehash(hash));
+            assertEquals(tree, back.tree());
+        }
+        sha1Store.close();
+        murmurStore.close();
+        ObjectStore reopened = new ObjectStore(murmurDir);
+        assertSame(Hash.named("murmur3"), reopened.hash());
+        assertEquals(murmurStore.ids(), reopened.ids());
+        reopened.close();
+    }
+
+    /** @return BYTES appended to FILE, or FILE cut to its first LENGTH
+     *  bytes if BYTES is null.
+     *  @param file a file to change
+     *  @param bytes the bytes to append, or null
+     *  @param length the new length when cutting */
+    private static File damage(File file, byte[] bytes, long length) {
+        try (java.nio.channels.FileChannel ch =
+                 java.nio.channels.FileChannel.open(file.toPath(),
+                     StandardOpenOption.WRITE)) {
+            if (bytes == null) {
+                ch.truncate(length);
+            } else {
+                ch.write(ByteBuffer.wrap(bytes), ch.size());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return file;
+    }
+
+    /** A store reopened after a crash left a torn record at the end of
+     *  its index or pack, or a whole record in the pack that was never
+     *  indexed, keeps every whole object and appends later ones in step,
+     *  so that they survive the next reopening too. */
+    @Test
+    public void storeRecoveryTest() {
+        File dir = tempDir();
+        File pack = new File(dir, "objects.pack");
+        File idx = new File(dir, "objects.idx");
+        ArrayList<byte[]> blobs = new ArrayList<byte[]>();
+        ArrayList<String> ids = new ArrayList<String>();
+        for (int round = 0; round < 4; round += 1) {
+            ObjectStore store = new ObjectStore(dir);
+            for (int i = 0; i < ids.size(); i += 1) {
+                assertArrayEquals(blobs.get(i), store.get(ids.get(i)));
+            }
+            for (int i = 0; i < 2; i += 1) {
+                byte[] data = ("round " + round + " blob " + i)
+                    .getBytes(StandardCharsets.UTF_8);
+                String id = Utils.hash(SHA1, data);
+                store.put(ObjectStore.BLOB, id, data);
+                blobs.add(data);
+                ids.add(id);
+            }
+            store.close();
+            switch (round) {
+            case 0:
+                damage(idx, new byte[] { 1, 2, 3 }, 0);
+                break;
+            case 1:
+                damage(pack, new byte[] { ObjectStore.BLOB, 0, 0 }, 0);
+                break;
+            case 2:
+                damage(idx, null, idx.length() - 1);
+                break;
+            default:
+                break;
+            }
+        }
+        ObjectStore store = new ObjectStore(dir);
+        assertEquals(ids.size(), store.ids().size());
+        for (int i = 0; i < ids.size(); i += 1) {
+            assertArrayEquals(blobs.get(i), store.get(ids.get(i)));
+        }
+        store.close();
+    }
+
+    /** @return a SHA-1 id beginning with PREFIX, the rest random.
+     *  @param random the source of the other digits
+     *  @param prefix the first digits */
+    private static String idFrom(Random random, String prefix) {
+        StringBuilder result = new StringBuilder(prefix);
+        while (result.length() < SHA1.hexLength()) {
+            result.append(Character.forDigit(random.nextInt(16), 16));
+        }
+        return result.toString();
+    }
+
+    /** @return up to LIMIT of the ids in IDS beginning with PREFIX, in
+     *  ascending order, found by brute force.
+     *  @param ids full ids
+     *  @param prefix an abbreviated id
+     *  @param limit the most wanted */
+    private static List<String> expected(Set<String> ids, String prefix,
+                                         int limit) {
+        ArrayList<String> result = new ArrayList<String>();
+        for (String id : new java.util.TreeSet<String>(ids)) {
+            if (id.startsWith(prefix) && result.size() < limit) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /** CommitIndex.matches finds a unique prefix, stops at the limit on
+     *  an ambiguous one, finds nothing for an absent or malformed one,
+     *  and handles ids at both ends of the fanout table, whether the ids
+     *  are in the sorted file or in the tail. */
+    @Test
+    public void commitIndexMatchesTest() {
+        Random random = new Random(11);
+        String zero = idFrom(random, "00"), zeroA = idFrom(random, "00ab");
+        String zeroB = idFrom(random, "00ac"), mid = idFrom(random, "7f1");
+        String top = idFrom(random, "ff"), topF = idFrom(random, "ffff");
+        File file = new File(tempDir(), "commit-ids");
+        CommitIndex index = new CommitIndex(file, SHA1);
+        index.addAll(List.of(zeroA, topF, mid));
+        index.add(zero);
+        index.add(zeroB);
+        index.add(top);
+        index.add(top);
+        for (CommitIndex ix : List.of(index, new CommitIndex(file, SHA1))) {
+            assertEquals(6, ix.size());
+            assertEquals(List.of(zeroA), ix.matches("00ab", 2));
+            assertEquals(List.of(mid), ix.matches("7", 2));
+            assertEquals(List.of(topF), ix.matches(topF, 2));
+            assertEquals(2, ix.matches("00", 2).size());
+            assertEquals(expected(Set.of(zero, zeroA, zeroB), "00", 3),
+                         ix.matches("00", 3));
+            assertEquals(expected(Set.of(top, topF), "ff", 2),
+                         ix.matches("f", 5));
+            assertEquals(List.of(zeroB), ix.matches(zeroB, 2));
+            assertEquals(List.of(), ix.matches("1", 2));
+            assertEquals(List.of(), ix.matches("00ad", 2));
+            assertEquals(List.of(), ix.matches("", 2));
+            assertEquals(List.of(), ix.matches("0G", 2));
+            assertEquals(List.of(), ix.matches(zero + "0", 2));
+        }
+    }
+
+    /** Ids added in batches, one at a time and across a merge of the
+     *  tail are all found, exactly once and in order, also after the
+     *  index is read back from its files. */
+    @Test
+    public void commitIndexAddTest() {
+        Random random = new Random(13);
+        File file = new File(tempDir(), "commit-ids");
+        CommitIndex index = new CommitIndex(file, SHA1);
+        java.util.HashSet<String> all = new java.util.HashSet<String>();
+        ArrayList<String> batch = new ArrayList<String>();
+        for (int i = 0; i < 400; i += 1) {
+            batch.add(idFrom(random, i % 50 == 0 ? "ff" : ""));
+        }
+        batch.add(batch.get(0));
+        index.addAll(batch);
+        all.addAll(batch);
+        File tail = new File(file.getPath() + ".tail");
+        for (int i = 0; i < 2 * CommitIndex.MAX_TAIL + 200; i += 1) {
+            String id = i % 7 == 0 ? batch.get(i % batch.size())
+                : idFrom(random, i % 40 == 0 ? "00" : "");
+            index.add(id);
+            all.add(id);
+            if (i == 300) {
+                String id0 = idFrom(random, "0");
+                index.addAll(List.of(id0, batch.get(1)));
+                all.add(id0);
+                assertFalse(tail.exists());
+            }
+        }
+        assertTrue(tail.length() < CommitIndex.MAX_TAIL * SHA1.bytes());
+        for (CommitIndex ix : List.of(index, new CommitIndex(file, SHA1))) {
+            assertEquals(all.size(), ix.size());
+            for (int d = 0; d < 16; d += 1) {
+                String digit = Integer.toHexString(d);
+                assertEquals(expected(all, digit, Integer.MAX_VALUE),
+                             ix.matches(digit, Integer.MAX_VALUE));
+            }
+            for (String prefix : List.of("00", "ff", "a", "3c")) {
+                assertEquals(expected(all, prefix, 2),
+                             ix.matches(prefix, 2));
+            }
+        }
+    }
+
+    /** @return FILE, written with CONTENTS and given the modification
+     *  time NANOS.
+     *  @param file a file to write
+     *  @param contents its new contents
+     *  @param nanos its new modification time, in nanoseconds */
+    private static File write(File file, String contents, long nanos) {
+        Utils.writeContents(file, contents);
+        try {
+            Files.setLastModifiedTime(file.toPath(),
+                java.nio.file.attribute.FileTime.from(nanos,
+                    java.util.concurrent.TimeUnit.NANOSECONDS));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return file;
+    }
+
+    /** @return the modification time of FILE in nanoseconds.
+     *  @param file an existing file */
+    private static long mtime(File file) {
+        try {
+            return Files.getLastModifiedTime(file.toPath())
+                .to(java.util.concurrent.TimeUnit.NANOSECONDS);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** A file modified, however recently, before the stat index was
+     *  written is not read again while its stat data is unchanged, while
+     *  a file modified no earlier than the index is rehashed on each use,
+     *  even after a rewrite of the same size leaves its stat data
+     *  unchanged. */
+    @Test
+    public void statIndexTest() {
+        File dir = tempDir();
+        File idx = new File(dir, "index");
+        File f = new File(dir, "f");
+        Utils.writeContents(f, "aaaa");
+        long fresh = mtime(f);
+        File probe = new File(dir, "probe");
+        do {
+            Utils.writeContents(probe, "");
+        } while (mtime(probe) <= fresh);
+        StatIndex index = new StatIndex(idx, SHA1);
+        String a = index.hash("f", f);
+        assertEquals(Utils.hash(SHA1, f), a);
+        index.save();
+        write(f, "bbbb", fresh);
+        assertEquals(a, new StatIndex(idx, SHA1).hash("f", f));
+
+        long stamp = mtime(idx);
+        StatIndex racy = new StatIndex(idx, SHA1);
+        for (String contents : List.of("cccc", "dddd", "eeee")) {
+            write(f, contents, stamp);
+            assertEquals(Utils.hash(SHA1, f), racy.hash("f", f));
+        }
+        long later = stamp + 3600000000000L;
+        write(f, "ffff", later);
+        racy.hash("f", f);
+        racy.save();
+        write(f, "gggg", later);
+        assertEquals(Utils.hash(SHA1, f),
+                     new StatIndex(idx, SHA1).hash("f", f));
+    }
+
+    /** Paths typed by a user lose "." components, doubled and trailing
+     *  separators, and resolve ".." against the component before it,
+     *  while a path leading out of the tree is refused. */
+    @Test
+    public void normalizeTest() {
+        assertEquals("a.txt", WorkTree.normalize("./a.txt"));
+        assertEquals("dir/f", WorkTree.normalize("dir//f/"));
+        assertEquals("f", WorkTree.normalize("dir/../f"));
+        assertEquals("b/c", WorkTree.normalize("a/./../b/x/../c"));
+        assertEquals("", WorkTree.normalize("a/.."));
+        for (String path : List.of("..", "../a.txt", "a/../../b")) {
+            try {
+                WorkTree.normalize(path);
+                fail(path);
+            } catch (GitletException excp) {
+                /* ignored */
+            }
+        }
+    }
+
+    /** @return the id of a commit of the tree TREE with message MSG and
+     *  PARENTS, written to STORE and added to GRAPH.
+     *  @param store an object store
+     *  @param graph its commit graph
+     *  @param msg the message, which makes the id unique
+     *  @param tree the id of the commit's tree
+     *  @param parents the ids of the parents */
+    private static String commit(ObjectStore store, CommitGraph graph,
+                                 String msg, String tree,
+                                 String... parents) {
+        Commit commit = new Commit(msg, tree,
+                                   parents.length == 0 ? null : parents,
+                                   false, SHA1);
+        store.put(ObjectStore.COMMIT, commit.uID(), commit.encode());
+        graph.add(commit);
+        return commit.uID();
+    }
+
+    /** @return the id of a blob holding TEXT, written to STORE.
+     *  @param store an object store
+     *  @param text the blob's contents */
+    private static String blob(ObjectStore store, String text) {
+        String id = Utils.hash(SHA1, text);
+        store.putBlob(id, text.getBytes(StandardCharsets.UTF_8), null);
+        return id;
+    }
+
+    /** A transfer to a store that holds part of the sender's history
+     *  chooses the missing commits, parents first, and only the trees
+     *  and blobs that they changed, walking the sender's commit-graph
+     *  even though every commit has the same time. */
+    @Test
+    public void transferTest() {
+        File sdir = tempDir(), rdir = tempDir();
+        ObjectStore sender = new ObjectStore(sdir);
+        ObjectStore receiver = new ObjectStore(rdir);
+        CommitGraph graph = new CommitGraph(new File(sdir, "commit-graph"),
+                                            SHA1);
+        String x1 = blob(sender, "x1"), y1 = blob(sender, "y1");
+        String t1 = Tree.update(sender, null, paths("x", x1, "d/y", y1));
+        String r = commit(sender, graph, "r", t1);
+        String s = commit(sender, graph, "s", t1, r);
+
+        Transfer clone = new Transfer(sender, graph, receiver, rdir);
+        assertEquals(List.of(r, s), clone.negotiate(s, List.of()));
+        clone.send();
+        assertEquals(paths("x", x1, "d/y", y1), Tree.flatten(receiver, t1));
+
+        String x2 = blob(sender, "x2"), z = blob(sender, "z");
+        String t2 = Tree.update(sender, t1, paths("x", x2));
+        String a = commit(sender, graph, "a", t2, s);
+        String t3 = Tree.update(sender, t2, paths("d/z", z));
+        String b = commit(sender, graph, "b", t3, a);
+        String c = commit(sender, graph, "c", t1, r);
+        String m = commit(sender, graph, "m", t3, b, c);
+        String d3 = Tree.read(sender, t3).id("d", Tree.TREE);
+
+        Transfer fetch = new Transfer(sender, graph, receiver, rdir);
+        List<String> got = fetch.negotiate(m, List.of(s));
+        assertEquals(Set.of(a, b, c, m), new java.util.HashSet<String>(got));
+        assertEquals(4, got.size());
+        assertTrue(got.indexOf(a) < got.indexOf(b));
+        assertEquals(m, got.get(3));
+        assertEquals(Set.of(a, t2, x2, b, t3, d3, z, c, m),
+                     new java.util.HashSet<String>(fetch.objects()));
+        assertEquals(9, fetch.objects().size());
+        fetch.send();
+        assertEquals(paths("x", x2, "d/y", y1, "d/z", z),
+                     Tree.flatten(receiver, t3));
+
+        Transfer none = new Transfer(sender, graph, receiver, rdir);
+        assertEquals(List.of(), none.negotiate(m, List.of(m, r)));
+        assertTrue(none.objects().isEmpty());
+        sender.close();
+        receiver.close();
+    }
+
+    /** Chunker.cut never cuts a chunk shorter than MIN_CHUNK, other than
+     *  the last, or longer than MAX_CHUNK, and cuts the same chunks after
+     *  an edit once it has passed the edited region. */
+    @Test
+    public void chunkerCutTest() {
+        Random random = new Random(17);
+        byte[] data = new byte[3 * Chunker.MAX_CHUNK + 1234];
+        random.nextBytes(data);
+        assertEquals(100, Chunker.cut(data, 7, 100));
+        assertEquals(Chunker.MIN_CHUNK,
+                     Chunker.cut(data, 0, Chunker.MIN_CHUNK));
+        Arrays.fill(data, 0, 2 * Chunker.MAX_CHUNK, (byte) 0);
+        assertEquals(Chunker.MAX_CHUNK, Chunker.cut(data, 0, data.length));
+        random.nextBytes(data);
+        List<Integer> before = cuts(data);
+        byte[] edited = new byte[data.length + 10];
+        System.arraycopy(data, 0, edited, 0, 1000);
+        System.arraycopy(data, 1000, edited, 1010, data.length - 1000);
+        List<Integer> after = cuts(edited);
+        int shared = 0;
+        for (int end : after) {
+            if (end > 1010 && before.contains(end - 10)) {
+                shared += 1;
+            }
+        }
+        assertTrue(shared >= after.size() - 2);
+    }
+
+    /** @return the end of each chunk into which Chunker.cut splits DATA,
+     *  checking that each chunk has a permitted length.
+     *  @param data the bytes to split */
+    private static List<Integer> cuts(byte[] data) {
+        ArrayList<Integer> result = new ArrayList<Integer>();
+        for (int off = 0; off < data.length;) {
+            int len = Chunker.cut(data, off,
+                                  Math.min(data.length - off,
+                                           2 * Chunker.MAX_CHUNK));
+            assertTrue(len <= Chunker.MAX_CHUNK);
+            assertTrue(len >= Chunker.MIN_CHUNK
+                       || off + len == data.length);
+            off += len;
+            result.add(off);
+        }
+        return result;
+    }
+
+    /** Files are stored whole unless gitlet.chunkThreshold is set, and
+     *  then in chunks that read back as the file, and a new version of
+     *  the file with a small edit reuses all but the chunks around it. */
+    @Test
+    public void chunkedStoreTest() {
+        File dir = tempDir();
+        File file = new File(dir, "big");
+        byte[] data = new byte[4 * Chunker.MAX_CHUNK];
+        new Random(19).nextBytes(data);
+        Utils.writeContents(file, data);
+        String id = Utils.hash(SHA1, file);
+        ObjectStore plain = tempStore();
+        plain.putFile(id, file, null);
+        assertNull(plain.chunks(id));
+        assertArrayEquals(data, plain.get(id));
+        plain.close();
+
+        System.setProperty("gitlet.chunkThreshold", "1000");
+        ObjectStore store;
+        try {
+            store = tempStore();
+        } finally {
+            System.clearProperty("gitlet.chunkThreshold");
+        }
+        store.putFile(id, file, null);
+        List<String> chunks = store.chunks(id);
+        assertTrue(chunks.size() > 2);
+        assertArrayEquals(data, store.get(id));
+
+        data[2 * Chunker.MAX_CHUNK] ^= 1;
+        Utils.writeContents(file, data);
+        String id2 = Utils.hash(SHA1, file);
+        long size = store.size();
+        store.putFile(id2, file, id);
+        List<String> chunks2 = store.chunks(id2);
+        assertArrayEquals(data, store.get(id2));
+        int fresh = 0;
+        for (String chunk : chunks2) {
+            if (!chunks.contains(chunk)) {
+                fresh += 1;
+            }
+        }
+        assertTrue(fresh >= 1 && fresh <= 2);
+        assertTrue(store.size() - size < 2 * Chunker.MAX_CHUNK);
+        store.close();
+    }
+
+    /** @return the TYPE byte of each record in the pack of the store in
+     *  DIR, by id.
+     *  @param dir the directory of a closed store */
+    private static HashMap<String, Byte> tags(File dir) {
+        ByteBuffer pack = ByteBuffer.wrap(
+            Utils.readContents(new File(dir, "objects.pack")));
+        HashMap<String, Byte> result = new HashMap<String, Byte>();
+        while (pack.hasRemaining()) {
+            byte tag = pack.get();
+            long length = pack.getLong();
+            result.put(Encoder.getId(pack, SHA1), tag);
+            pack.position(pack.position() + (int) length);
+        }
+        return result;
+    }
+
+    /** Each codec decodes what it encodes and is found by its number and
+     *  name.  A store keeps the codec's number in the high bits of the
+     *  TYPE byte of the records it compresses, stores incompressible data
+     *  as it is, and reads back objects stored before compression. */
+    @Test
+    public void codecTest() {
+        byte[] text = "to be or not to be, ".repeat(500)
+            .getBytes(StandardCharsets.UTF_8);
+        byte[] noise = new byte[5000];
+        new Random(23).nextBytes(noise);
+        for (int id : new int[] { Codec.NONE, Codec.DEFLATE }) {
+            Codec codec = Codec.get(id);
+            assertEquals(id, codec.id());
+            assertSame(codec, Codec.named(codec.name()));
+            for (byte[] data : List.of(text, noise, new byte[0])) {
+                byte[] packed = codec.encode(data);
+                assertArrayEquals(data, codec.decode(
+                    new java.io.ByteArrayInputStream(packed), data.length));
+            }
+        }
+        assertTrue(Codec.get(Codec.DEFLATE).encode(text).length
+                   < text.length / 10);
+
+        File dir = tempDir();
+        System.setProperty("gitlet.codec", "none");
+        ObjectStore old;
+        try {
+            old = new ObjectStore(dir);
+        } finally {
+            System.clearProperty("gitlet.codec");
+        }
+        String a = Utils.hash(SHA1, text);
+        old.putBlob(a, text, null);
+        old.close();
+        assertEquals(ObjectStore.BLOB, (byte) tags(dir).get(a));
+
+        ObjectStore store = new ObjectStore(dir);
+        assertArrayEquals(text, store.get(a));
+        byte[] text2 = Arrays.copyOf(text, text.length + 1);
+        String b = Utils.hash(SHA1, text2), c = Utils.hash(SHA1, noise);
+        String t = Utils.hash(SHA1, "tree");
+        store.putBlob(b, text2, null);
+        store.putBlob(c, noise, null);
+        store.put(ObjectStore.TREE, t, text);
+        store.close();
+        HashMap<String, Byte> tags = tags(dir);
+        assertEquals(ObjectStore.BLOB
+                     | Codec.DEFLATE << ObjectStore.CODEC_SHIFT,
+                     (int) tags.get(b));
+        assertEquals(ObjectStore.TREE
+                     | Codec.DEFLATE << ObjectStore.CODEC_SHIFT,
+                     (int) tags.get(t));
+        assertEquals(ObjectStore.BLOB, (byte) tags.get(c));
+
+        store = new ObjectStore(dir);
+        assertArrayEquals(text, store.get(a));
+        assertArrayEquals(text2, store.get(b));
+        assertArrayEquals(noise, store.get(c));
+        assertArrayEquals(text, store.get(t));
+        assertEquals(ObjectStore.TREE, store.type(t));
+        assertEquals(ObjectStore.BLOB, store.type(b));
+        store.close();
+    }
+
+    /** @return the summary of a collection of the garbage of STORE with
+     *  the grace period GRACE, in milliseconds, keeping what ROOT reaches.
+     *  @param store an object store
+     *  @param pending the file of objects awaiting removal
+     *  @param grace the grace period
+     *  @param root the id of a live commit */
+    private static String collect(ObjectStore store, File pending,
+                                  long grace, String root) {
+        System.setProperty("gitlet.gcGrace", Long.toString(grace));
+        try {
+            GarbageCollector gc = new GarbageCollector(store, pending);
+            gc.markCommit(root);
+            return gc.collect(false);
+        } finally {
+            System.clearProperty("gitlet.gcGrace");
+        }
+    }
+
+    /** Garbage collection keeps every object a live commit reaches, keeps
+     *  unreachable objects, and all they reach, while they are within the
+     *  grace period, and removes them once it has passed. */
+    @Test
+    public void gcGraceTest() throws InterruptedException {
+        File dir = tempDir();
+        File pending = new File(dir, "gc-pending");
+        ObjectStore store = new ObjectStore(dir);
+        CommitGraph graph = new CommitGraph(new File(dir, "commit-graph"),
+                                            SHA1);
+        String x = blob(store, "x"), y = blob(store, "y");
+        String z = blob(store, "z");
+        String t1 = Tree.update(store, null, paths("d/x", x));
+        String r = commit(store, graph, "r", t1);
+        String t2 = Tree.update(store, null, paths("z", z));
+        String u = commit(store, graph, "u", t2, r);
+        List<String> live = List.of(x, t1, r, Tree.read(store, t1)
+                                    .id("d", Tree.TREE));
+        List<String> dead = List.of(y, z, t2, u);
+
+        for (int i = 0; i < 2; i += 1) {
+            collect(store, pending, TimeUnit.HOURS.toMillis(1), r);
+            for (String id : dead) {
+                assertTrue(store.contains(id));
+            }
+            assertTrue(pending.exists());
+        }
+        assertArrayEquals("z".getBytes(StandardCharsets.UTF_8),
+                          store.get(z));
+        Thread.sleep(2);
+        collect(store, pending, 1, r);
+        for (String id : dead) {
+            assertFalse(store.contains(id));
+        }
+        for (String id : live) {
+            assertTrue(store.contains(id));
+        }
+        assertFalse(pending.exists());
+        assertEquals(paths("d/x", x), Tree.flatten(store, t1));
+        store.close();
+    }
+
+    /** Fsck passes a whole store, and reports a record that does not hash
+     *  to its id, a commit whose parent is missing, and a blob that
+     *  nothing refers to. */
+    @Test
+    public void fsckTest() {
+        File dir = tempDir();
+        ObjectStore store = new ObjectStore(dir);
+        CommitGraph graph = new CommitGraph(new File(dir, "commit-graph"),
+                                            SHA1);
+        String x = blob(store, "x");
+        String t = Tree.update(store, null, paths("d/x", x));
+        String r = commit(store, graph, "r", t);
+        List<String> report = new Fsck(store).run(List.of(r));
+        assertEquals(1, report.size());
+        assertTrue(report.get(0), report.get(0).startsWith("Checked 4 "));
+        assertTrue(report.get(0),
+                   report.get(0).endsWith("0 corrupt, 0 missing, "
+                                          + "0 dangling."));
+
+        String y = blob(store, "y");
+        String w = Utils.hash(SHA1, "w");
+        store.putBlob(w, "not w".getBytes(StandardCharsets.UTF_8), null);
+        String gone = Utils.hash(SHA1, "gone");
+        Commit orphan = new Commit("a", t, new String[] { r, gone }, false,
+                                   SHA1);
+        store.put(ObjectStore.COMMIT, orphan.uID(), orphan.encode());
+        report = new Fsck(store).run(List.of(orphan.uID()));
+        String summary = report.remove(report.size() - 1);
+        assertTrue(summary, summary.endsWith("1 corrupt, 1 missing, "
+                                             + "2 dangling."));
+        assertEquals(new ArrayList<String>(new java.util.TreeSet<String>(
+            List.of("corrupt blob " + w, "dangling blob " + w,
+                    "dangling blob " + y,
+                    "missing " + gone + " (referred to by "
+                    + orphan.uID() + ")"))), report);
+        store.close();
+    }
+
+    /** A changed-path filter never denies a change to a path a commit
+     *  changed or to a directory above it, rarely admits one to another
+     *  path, and is empty for a commit that changed more than MAX_PATHS
+     *  paths.  The filters read back from their file, and a record torn
+     *  by a crash is cut off so that later ones are read back too. */
+    @Test
+    public void changedPathsTest() {
+        Random random = new Random(29);
+        File file = new File(tempDir(), "commit-paths");
+        ChangedPaths filters = new ChangedPaths(file, SHA1);
+        HashMap<String, List<String>> changed =
+            new HashMap<String, List<String>>();
+        for (int c = 0; c < 20; c += 1) {
+            ArrayList<String> paths = new ArrayList<String>();
+            int n = c == 0 ? ChangedPaths.MAX_PATHS + 1 : 1 + c * 10;
+            for (int i = 0; i < n; i += 1) {
+                paths.add("d" + random.nextInt(8) + "/e" + random.nextInt(8)
+                          + "/f" + random.nextInt(1000000));
+            }
+            String uid = idFrom(random, "");
+            filters.add(uid, paths);
+            changed.put(uid, paths);
+        }
+        long length = file.length();
+        damage(file, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12,
+                                  13, 14, 15, 16, 17, 18, 19, 20, 0, 0,
+                                  1 }, 0);
+        ChangedPaths reread = new ChangedPaths(file, SHA1);
+        assertEquals(length, file.length());
+        String late = idFrom(random, "");
+        reread.add(late, List.of("g/h"));
+        changed.put(late, List.of("g/h"));
+        for (ChangedPaths f : List.of(filters, reread,
+                                      new ChangedPaths(file, SHA1))) {
+            int falsePositives = 0, tries = 0;
+            for (Map.Entry<String, List<String>> e : changed.entrySet()) {
+                if (!f.contains(e.getKey())) {
+                    assertSame(filters, f);
+                    continue;
+                }
+                for (String path : e.getValue()) {
+                    assertTrue(f.mayHaveChanged(e.getKey(), path));
+                    assertTrue(f.mayHaveChanged(e.getKey(),
+                        path.substring(0, path.lastIndexOf('/'))));
+                    assertTrue(f.mayHaveChanged(e.getKey(),
+                        path.substring(0, path.indexOf('/'))));
+                    boolean other = f.mayHaveChanged(e.getKey(),
+                                                     path + "x");
+                    if (e.getValue().size() > ChangedPaths.MAX_PATHS) {
+                        assertTrue(other);
+                    } else {
+                        tries += 1;
+                        falsePositives += other ? 1 : 0;
+                    }
+                }
+            }
+            assertTrue(falsePositives < tries / 10);
+        }
+    }
+
 }
@@ -9,13 +9,14 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -24,39 +25,121 @@ import java.util.List;
  */
 class Utils {
 
-    /* SHA-1 HASH VALUES. */
+    /* HASH VALUES. */
+
+    /** Returns the id, under the repository's algorithm HASH, of the
+     *  concatenation of VALS, which may be any mixture of byte arrays and
+     *  Strings. */
+    static String hash(Hash hash, Object... vals) {
+        MessageDigest md = hash.digest();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+            } else if (val instanceof String) {
+                md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            } else {
+                throw new IllegalArgumentException("improper type to hash");
+            }
+        }
+        return toHex(md.digest());
+    }
 
-    /** The length of a complete SHA-1 UID as a hexadecimal numeral. */
-    static final int UID_LENGTH = 40;
+    /** Returns the id, under HASH, of the concatenation of the strings in
+     *  VALS. */
+    static String hash(Hash hash, List<Object> vals) {
+        return hash(hash, vals.toArray(new Object[vals.size()]));
+    }
 
-    /** Returns the SHA-1 hash of the concatenation of VALS, which may
-     *  be any mixture of byte arrays and Strings. */
-    static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
-            }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+    /** Size of the buffer used to hash the contents of files. */
+    private static final int HASH_CHUNK = 1 << 16;
+
+    /** Returns the id, under HASH, of the contents of FILE, which is read
+     *  in fixed-size chunks rather than all at once.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static String hash(Hash hash, File file) {
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                                               StandardOpenOption.READ)) {
+            MessageDigest md = hash.digest();
+            ByteBuffer buf = ByteBuffer.allocateDirect(HASH_CHUNK);
+            while (in.read(buf) >= 0) {
+                buf.flip();
+                md.update(buf);
+                buf.clear();
             }
-            return result.toString();
-        } catch (NoSuchAlgorithmException excp) {
-            throw new IllegalArgumentException("System does not support SHA-1");
+            return toHex(md.digest());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
         }
     }
 
-    /** Returns the SHA-1 hash of the concatenation of the strings in
-     *  VALS. */
-    static String sha1(List<Object> vals) {
-        return sha1(vals.toArray(new Object[vals.size()]));
+    /** Number of bits denoted by one hexadecimal digit. */
+    static final int HEX_BITS = 4;
+
+    /** Mask of the bits denoted by one hexadecimal digit. */
+    private static final int HEX_MASK = (1 << HEX_BITS) - 1;
+
+    /** The hexadecimal digits, by value. */
+    private static final byte[] HEX_DIGITS =
+        "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    /** The value of each ASCII character as a hexadecimal digit, or -1. */
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < HEX_DIGITS.length; i += 1) {
+            HEX_VALUES[HEX_DIGITS[i]] = (byte) i;
+            HEX_VALUES[Character.toUpperCase(HEX_DIGITS[i])] = (byte) i;
+        }
+    }
+
+    /** Returns the hexadecimal numeral for the bytes of RAW. */
+    static String toHex(byte[] raw) {
+        byte[] result = new byte[2 * raw.length];
+        for (int i = 0; i < raw.length; i += 1) {
+            result[2 * i] = HEX_DIGITS[(raw[i] >> HEX_BITS) & HEX_MASK];
+            result[2 * i + 1] = HEX_DIGITS[raw[i] & HEX_MASK];
+        }
+        return new String(result, StandardCharsets.US_ASCII);
+    }
+
+    /** Returns the bytes denoted by the hexadecimal numeral HEX, which
+     *  must have an even number of digits. */
+    static byte[] fromHex(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = (byte) (hexDigit(hex, 2 * i) << HEX_BITS
+                                | hexDigit(hex, 2 * i + 1));
+        }
+        return result;
+    }
+
+    /** Returns the value of the hexadecimal digit at index I of HEX.
+     *  Throws IllegalArgumentException if it is not a digit. */
+    static int hexDigit(String hex, int i) {
+        char c = hex.charAt(i);
+        int v = c < HEX_VALUES.length ? HEX_VALUES[c] : -1;
+        if (v < 0) {
+            throw new IllegalArgumentException("bad hexadecimal numeral "
+                                               + hex);
+        }
+        return v;
+    }
+
+    /** Returns true iff ID is a full object id of the algorithm HASH:
+     *  HASH.hexLength() lowercase hexadecimal digits. */
+    static boolean isObjectId(String id, Hash hash) {
+        if (id.length() != hash.hexLength()) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i += 1) {
+            char c = id.charAt(i);
+            if (c >= HEX_VALUES.length || HEX_VALUES[c] < 0
+                || Character.isUpperCase(c)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /* FILE DELETION */
@@ -64,9 +147,14 @@ class Utils {
     /** Deletes FILE if it exists and is not a directory.  Returns true
      *  if FILE was deleted, and false otherwise.  Refuses to delete FILE
      *  and throws IllegalArgumentException unless the directory designated by
-     *  FILE also contains a directory named .gitlet. */
+     *  FILE, or a directory above it, also contains a directory named
+     *  .gitlet. */
     static boolean restrictedDelete(File file) {
-        if (!(new File(file.getParentFile(), ".gitlet")).isDirectory()) {
+        File dir = file.getAbsoluteFile().getParentFile();
+        while (dir != null && !(new File(dir, ".gitlet")).isDirectory()) {
+            dir = dir.getParentFile();
+        }
+        if (dir == null) {
             throw new IllegalArgumentException("not .gitlet working directory");
         }
         if (!file.isDirectory()) {
@@ -0,0 +1,178 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/** The files of a working tree, found by walking its directories in
+ *  parallel: each directory is listed by its own task on a ForkJoinPool,
+ *  which forks a task for each subdirectory, so that the latency of
+ *  listing and statting is overlapped across directories.  The .gitlet
+ *  directory and every path matched by the tree's Ignore patterns are
+ *  skipped, and an ignored directory is not entered at all.  Symbolic
+ *  links to directories are not followed.
+ *  @author sky
+ */
+class WorkTree {
+
+    /** Name of the ignore file at the top of the working tree. */
+    static final String IGNORE_FILE = ".gitletignore";
+
+    /** The working tree whose top is ROOT and whose ignore patterns are
+     *  read from the ignore file there.
+     *  @param root the top directory of the working tree */
+    WorkTree(File root) {
+        _root = root;
+        _ignore = new Ignore(new File(root, IGNORE_FILE));
+    }
+
+    /** @return the paths, relative to the top of the tree and separated by
+     *  Tree.SEP, of the files under the directory DIR, in order.
+     *  @param dir a directory path relative to the top, or "" for the
+     *             whole tree */
+    List<String> files(String dir) {
+        ArrayList<String> result = new ArrayList<String>();
+        File top = dir.isEmpty() ? _root : new File(_root, dir);
+        String prefix = dir.isEmpty() ? "" : dir + Tree.SEP;
+        ForkJoinPool.commonPool().invoke(new Walk(top.toPath(), prefix))
+            .collect(result);
+        Collections.sort(result);
+        return result;
+    }
+
+    /** @return PATH, as typed by a user, relative to the top of the tree
+     *  with components separated by Tree.SEP, without "." components or
+     *  a trailing separator, and with each ".." resolved against the
+     *  component before it; "" for the top itself.  A path that leads
+     *  out of the tree is reported as a file that does not exist.
+     *  @param path a path relative to the current directory */
+    static String normalize(String path) {
+        ArrayList<String> parts = new ArrayList<String>();
+        for (String part : path.replace(File.separatorChar, Tree.SEP)
+                 .split(String.valueOf(Tree.SEP))) {
+            if (part.isEmpty() || part.equals(".")) {
+                continue;
+            }
+            if (!part.equals("..")) {
+                parts.add(part);
+            } else if (parts.isEmpty()) {
+                Utils.message("File does not exist.");
+                throw new GitletException();
+            } else {
+                parts.remove(parts.size() - 1);
+            }
+        }
+        return String.join(String.valueOf(Tree.SEP), parts);
+    }
+
+    /** Create the directories that the working file FILE lies in.
+     *  @param file a working file about to be written */
+    static void makeParents(File file) {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IllegalArgumentException("cannot create " + dir);
+        }
+    }
+
+    /** Delete the working file PATH, and then each directory above it
+     *  that is left empty.
+     *  @param path a path relative to the top of the tree */
+    static void delete(String path) {
+        File file = new File(path);
+        Utils.restrictedDelete(file);
+        for (File dir = file.getParentFile(); dir != null;
+             dir = dir.getParentFile()) {
+            String[] left = dir.list();
+            if (left == null || left.length > 0 || !dir.delete()) {
+                break;
+            }
+        }
+    }
+
+    /** The files found under one directory: those directly in it, and
+     *  the results of the walks of its subdirectories. */
+    private static class Found {
+        /** Files directly in the directory. */
+        private final ArrayList<String> _files = new ArrayList<String>();
+        /** Results for the subdirectories. */
+        private final ArrayList<Found> _subdirs = new ArrayList<Found>();
+
+        /** Add every file found here and below to RESULT.
+         *  @param result the list being built */
+        void collect(List<String> result) {
+            result.addAll(_files);
+            for (Found sub : _subdirs) {
+                sub.collect(result);
+            }
+        }
+    }
+
+    /** Lists one directory, forking a walk of each subdirectory. */
+    private class Walk extends RecursiveTask<Found> {
+        /** A walk of DIR, whose path in the tree, followed by Tree.SEP,
+         *  is PREFIX.
+         *  @param dir the directory
+         *  @param prefix its path relative to the top, ending in Tree.SEP,
+         *                or "" for the top */
+        Walk(Path dir, String prefix) {
+            _dir = dir;
+            _prefix = prefix;
+        }
+
+        @Override
+        protected Found compute() {
+            Found found = new Found();
+            ArrayList<Walk> subwalks = new ArrayList<Walk>();
+            try (DirectoryStream<Path> entries =
+                     Files.newDirectoryStream(_dir)) {
+                for (Path child : entries) {
+                    String name = child.getFileName().toString();
+                    if (name.equals(".gitlet")) {
+                        continue;
+                    }
+                    String path = _prefix + name;
+                    BasicFileAttributes attrs = Files.readAttributes(child,
+                        BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    boolean dir = attrs.isDirectory();
+                    if (_ignore.ignored(path, dir)) {
+                        continue;
+                    }
+                    if (dir) {
+                        Walk sub = new Walk(child, path + Tree.SEP);
+                        sub.fork();
+                        subwalks.add(sub);
+                    } else if (attrs.isRegularFile()
+                               || Files.isRegularFile(child)) {
+                        found._files.add(path);
+                    }
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            for (Walk sub : subwalks) {
+                found._subdirs.add(sub.join());
+            }
+            return found;
+        }
+
+        /** The directory listed. */
+        private final Path _dir;
+        /** Its path relative to the top, followed by Tree.SEP. */
+        private final String _prefix;
+    }
+
+    /** The top directory of the working tree. */
+    private final File _root;
+
+    /** The tree's ignore patterns. */
+    private final Ignore _ignore;
+}